@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenGeneratedClaim;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.ArrayList;
+
+/**
+ * Measures the authorization decision for a token carrying 10k authorities, the {@code hashed} authentication built by
+ * {@link WithMockJwtTokenSecurityContextFactory} against a {@code list} one holding the same authorities.
+ * <p>
+ * {@code contains} is a lookup of the granted authorities, as done by application code, {@code authorizationManager}
+ * an {@link AuthorityAuthorizationManager} decision, which iterates over the granted authorities either way.
+ */
+@State(Scope.Benchmark)
+public class MockJwtAuthenticationTokenBenchmark {
+
+    @Param({"hashed", "list"})
+    public String authorities;
+
+    private final GrantedAuthority lastAuthority = new SimpleGrantedAuthority("group-9999");
+
+    private final AuthorityAuthorizationManager<Object> authorizationManager =
+            AuthorityAuthorizationManager.hasAuthority("group-9999");
+
+    private JwtAuthenticationToken authentication;
+
+    @Setup
+    public void setup() {
+        JwtAuthenticationToken hashed = WithMockJwtTokenSecurityContextFactory
+                .getAuthentication(TenThousandGroups.class.getAnnotation(WithMockJwtToken.class));
+        this.authentication = "hashed".equals(this.authorities) ? hashed : new JwtAuthenticationToken(
+                hashed.getToken(), new ArrayList<>(hashed.getAuthorities()), hashed.getName());
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return this.authentication.getAuthorities().contains(this.lastAuthority);
+    }
+
+    @Benchmark
+    public boolean authorizationManager() {
+        return this.authorizationManager.check(() -> this.authentication, null).isGranted();
+    }
+
+    @WithMockJwtToken(subject = "pedro", generatedClaims = @WithMockJwtTokenGeneratedClaim(name = "groups",
+            prefix = "group-", count = 10_000, authorities = true))
+    static class TenThousandGroups {
+    }
+}
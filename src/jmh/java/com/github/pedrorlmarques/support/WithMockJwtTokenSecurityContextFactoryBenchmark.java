@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * Measures {@link WithMockJwtTokenSecurityContextFactory} across realistic {@link WithMockJwtToken} shapes.
+ * <p>
+ * {@code createSecurityContext} is what every test method pays, {@code snapshot} and {@code createAuthentication}
+ * are the steps it is made of, the latter being only paid on a cache miss.
+ */
+@State(Scope.Benchmark)
+public class WithMockJwtTokenSecurityContextFactoryBenchmark {
+
+    @Param({"minimal", "manyRoles", "manyAuthorities", "manyClaims", "timestamps"})
+    public String shape;
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    private WithMockJwtToken withMockJwtToken;
+
+    private WithMockJwtTokenAttributes attributes;
+
+    @Setup
+    public void setup() {
+        this.withMockJwtToken = shapeClass(this.shape).getAnnotation(WithMockJwtToken.class);
+        this.attributes = WithMockJwtTokenAttributes.from(this.withMockJwtToken);
+    }
+
+    @Benchmark
+    public SecurityContext createSecurityContext() {
+        return this.factory.createSecurityContext(this.withMockJwtToken);
+    }
+
+    @Benchmark
+    public WithMockJwtTokenAttributes snapshot() {
+        return WithMockJwtTokenAttributes.from(this.withMockJwtToken);
+    }
+
+    @Benchmark
+    public JwtAuthenticationToken createAuthentication() {
+        return WithMockJwtTokenSecurityContextFactory.createAuthentication(this.attributes);
+    }
+
+    private static Class<?> shapeClass(String shape) {
+        switch (shape) {
+            case "minimal":
+                return Minimal.class;
+            case "manyRoles":
+                return ManyRoles.class;
+            case "manyAuthorities":
+                return ManyAuthorities.class;
+            case "manyClaims":
+                return ManyClaims.class;
+            case "timestamps":
+                return Timestamps.class;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    @WithMockJwtToken(subject = "pedro")
+    static class Minimal {
+    }
+
+    @WithMockJwtToken(subject = "pedro", scope = {"read", "write"}, roles = {
+            "USER", "ADMIN", "AUDITOR", "OPERATOR", "SUPPORT", "BILLING", "REPORTING", "DEVELOPER",
+            "TENANT_ADMIN", "TENANT_USER", "READ_ONLY", "APPROVER", "REVIEWER", "PUBLISHER", "EDITOR", "VIEWER"})
+    static class ManyRoles {
+    }
+
+    @WithMockJwtToken(subject = "pedro", scope = {"read", "write"}, authorities = {
+            "orders:read", "orders:write", "orders:delete", "invoices:read", "invoices:write", "invoices:delete",
+            "customers:read", "customers:write", "customers:delete", "products:read", "products:write",
+            "products:delete", "reports:read", "reports:export", "tenants:read", "tenants:write"})
+    static class ManyAuthorities {
+    }
+
+    @WithMockJwtToken(subject = "pedro", audience = {"account", "orders"}, additionalClaims = {
+            @WithMockJwtTokenClaim(name = "tenant", value = "dev"),
+            @WithMockJwtTokenClaim(name = "account", value = "pedro-1"),
+            @WithMockJwtTokenClaim(name = "given_name", value = "Pedro"),
+            @WithMockJwtTokenClaim(name = "family_name", value = "Marques"),
+            @WithMockJwtTokenClaim(name = "email", value = "pedro@example.com"),
+            @WithMockJwtTokenClaim(name = "email_verified", value = "true"),
+            @WithMockJwtTokenClaim(name = "locale", value = "pt-PT"),
+            @WithMockJwtTokenClaim(name = "zoneinfo", value = "Europe/Lisbon"),
+            @WithMockJwtTokenClaim(name = "preferred_username", value = "pedro"),
+            @WithMockJwtTokenClaim(name = "azp", value = "web-app"),
+            @WithMockJwtTokenClaim(name = "acr", value = "1"),
+            @WithMockJwtTokenClaim(name = "session_state", value = "a6b7c8d9"),
+            @WithMockJwtTokenClaim(name = "sid", value = "a6b7c8d9"),
+            @WithMockJwtTokenClaim(name = "region", value = "eu-west-1"),
+            @WithMockJwtTokenClaim(name = "department", value = "engineering"),
+            @WithMockJwtTokenClaim(name = "cost_center", value = "cc-42"),
+            @WithMockJwtTokenClaim(name = "employee_id", value = "e-1234"),
+            @WithMockJwtTokenClaim(name = "manager", value = "joao"),
+            @WithMockJwtTokenClaim(name = "plan", value = "enterprise"),
+            @WithMockJwtTokenClaim(name = "feature_a", value = "on"),
+            @WithMockJwtTokenClaim(name = "feature_b", value = "off"),
+            @WithMockJwtTokenClaim(name = "feature_c", value = "on"),
+            @WithMockJwtTokenClaim(name = "client_ip", value = "10.0.0.1"),
+            @WithMockJwtTokenClaim(name = "auth_time", value = "1600000000")
+    })
+    static class ManyClaims {
+    }
+
+    @WithMockJwtToken(subject = "pedro", jti = "id-1",
+            issuedAt = "2020-01-01T00:00:00Z", expiresAt = "2030-01-01T00:00:00Z")
+    static class Timestamps {
+    }
+}
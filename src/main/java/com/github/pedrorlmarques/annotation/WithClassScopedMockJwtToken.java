@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.annotation;
+
+import com.github.pedrorlmarques.support.WithClassScopedMockJwtTokenTestExecutionListener;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Class scoped variant of a class level {@link WithMockJwtToken}: the authentication is built once before the test
+ * class, also being visible from {@code @BeforeAll} methods, and each test method only gets a new
+ * {@link org.springframework.security.core.context.SecurityContext} holding it. A method level
+ * {@link WithMockJwtToken} still takes precedence.
+ * <pre>
+ * &#064;WebMvcTest
+ * &#064;WithClassScopedMockJwtToken(&#064;WithMockJwtToken(subject = "pedro", roles = "ADMIN"))
+ * class AdminControllerTest {
+ * </pre>
+ *
+ * @see WithClassScopedMockJwtTokenTestExecutionListener
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface WithClassScopedMockJwtToken {
+
+    /**
+     * The identity shared by all the test methods.
+     *
+     * @return
+     */
+    WithMockJwtToken value();
+}
@@ -31,4 +31,38 @@ public @interface WithMockJwtTokenClaim {
      * @return
      */
     String value();
+
+    /**
+     * How {@link #value()} is parsed. The default is {@link Type#STRING}, the value being used as is.
+     *
+     * @return
+     */
+    Type type() default Type.STRING;
+
+    /**
+     * The type of a claim value. Values other than strings are parsed once as JSON, objects and arrays becoming
+     * immutable {@link java.util.Map} and {@link java.util.List}, like the claims of a decoded token.
+     */
+    enum Type {
+
+        /**
+         * The value as is.
+         */
+        STRING,
+
+        /**
+         * A JSON number, e.g. {@code 42} or {@code 4.2}, parsed as a {@link Long} or a {@link Double}.
+         */
+        NUMBER,
+
+        /**
+         * {@code true} or {@code false}.
+         */
+        BOOLEAN,
+
+        /**
+         * Any JSON value, e.g. {@code ["a", "b"]} or {@code {"roles": ["admin"]}}.
+         */
+        JSON
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.annotation;
+
+/**
+ * A synthetic claim holding {@link #count()} generated values, {@link #prefix()} followed by the index, e.g.
+ * {@code @WithMockJwtTokenGeneratedClaim(name = "groups", prefix = "group-", count = 3)} gives
+ * {@code "groups": ["group-0", "group-1", "group-2"]}.
+ */
+public @interface WithMockJwtTokenGeneratedClaim {
+
+    /**
+     * The claim name to be used.
+     *
+     * @return
+     */
+    String name();
+
+    /**
+     * The prefix of every value.
+     *
+     * @return
+     */
+    String prefix() default "";
+
+    /**
+     * The number of values.
+     *
+     * @return
+     */
+    int count();
+
+    /**
+     * Whether the values are also granted as authorities, in addition to {@link WithMockJwtToken#roles()} or
+     * {@link WithMockJwtToken#authorities()}.
+     *
+     * @return
+     */
+    boolean authorities() default false;
+}
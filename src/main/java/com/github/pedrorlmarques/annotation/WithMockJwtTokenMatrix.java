@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.annotation;
+
+import com.github.pedrorlmarques.support.WithMockJwtTokenMatrixExtension;
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated test method once per identity, each invocation seeing its own
+ * {@link org.springframework.security.core.context.SecurityContext}.
+ * <p>
+ * The authentications of all the identities are built before the first invocation. Invocations run concurrently when
+ * JUnit parallel execution is enabled ({@code junit.jupiter.execution.parallel.enabled=true}) and the method, or
+ * the default mode, is {@code CONCURRENT}. Concurrent identities must then share the same
+ * {@link WithMockJwtToken#securityStrategyName()}, unless the
+ * {@link com.github.pedrorlmarques.support.ThreadScopedSecurityContextHolderStrategy} is installed.
+ * <pre>
+ * &#064;WithMockJwtTokenMatrix({
+ *         &#064;WithMockJwtToken(subject = "admin", roles = "ADMIN"),
+ *         &#064;WithMockJwtToken(subject = "auditor", authorities = "read")
+ * })
+ * &#064;Execution(ExecutionMode.CONCURRENT)
+ * void canReadAccounts(JwtAuthenticationToken authentication) {
+ * </pre>
+ * The current {@link org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken} and
+ * {@link org.springframework.security.oauth2.jwt.Jwt} can be injected as test method parameters.
+ */
+@Target({ElementType.METHOD, ElementType.ANNOTATION_TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@TestTemplate
+@ExtendWith(WithMockJwtTokenMatrixExtension.class)
+public @interface WithMockJwtTokenMatrix {
+
+    /**
+     * The identities to run the test with.
+     *
+     * @return
+     */
+    WithMockJwtToken[] value();
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.annotation;
+
+import com.github.pedrorlmarques.support.WithMockOpaqueTokenSecurityContextFactory;
+import org.springframework.core.annotation.AliasFor;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.test.context.support.TestExecutionEvent;
+import org.springframework.security.test.context.support.WithSecurityContext;
+import org.springframework.test.context.TestContext;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The opaque token sibling of {@link WithMockJwtToken}: the {@link SecurityContext} holds a
+ * {@code BearerTokenAuthentication} whose principal carries the claims an {@code OpaqueTokenIntrospector} would
+ * return, e.g. the {@code scope} as a list and {@code exp} as an {@link java.time.Instant}.
+ * <p>
+ * The token is registered with {@link com.github.pedrorlmarques.support.MockIntrospectionServer}, which answers the
+ * introspection requests of the application for it.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+@WithSecurityContext(factory = WithMockOpaqueTokenSecurityContextFactory.class)
+public @interface WithMockOpaqueToken {
+
+    /**
+     * The subject to be used. Required unless it comes from the {@link #fixture()}.
+     *
+     * @return
+     */
+    String subject() default "";
+
+    /**
+     * The name of a claim set read from the {@code META-INF/with-mock-jwt-token/<fixture>.json} classpath resource,
+     * see {@link WithMockJwtToken#fixture()}.
+     *
+     * @return
+     */
+    String fixture() default "";
+
+    /**
+     * The token value. The default is a random value, generated once per identity.
+     *
+     * @return
+     */
+    String token() default "";
+
+    /**
+     * Scopes to be used.
+     *
+     * @return
+     */
+    String[] scope() default {};
+
+    /**
+     * The jti to be used.
+     *
+     * @return
+     */
+    String jti() default "";
+
+    /**
+     * The roles to use, each value being prefixed with "ROLE_", see {@link WithMockJwtToken#roles()}.
+     *
+     * @return
+     */
+    String[] roles() default {"USER"};
+
+    /**
+     * The authorities to use. A {@link GrantedAuthority} will be created for each value. If this property is specified
+     * then {@link #roles()} is not used.
+     *
+     * @return
+     */
+    String[] authorities() default {};
+
+    /**
+     * The audience to be used.
+     *
+     * @return
+     */
+    String[] audience() default {};
+
+    /**
+     * The expiresAt to be used.
+     * Instant format
+     *
+     * @return
+     */
+    String expiresAt() default "";
+
+    /**
+     * The expiration relative to {@link com.github.pedrorlmarques.support.MockJwtTokenClock}, see
+     * {@link WithMockJwtToken#expiresIn()}.
+     *
+     * @return
+     */
+    String expiresIn() default "";
+
+    /**
+     * The issuedAt to be used.
+     * Instant format
+     *
+     * @return
+     */
+    String issuedAt() default "";
+
+    /**
+     * Security Context Strategy. The default is MODE_THREADLOCAL
+     * Check SecurityContextHolder
+     *
+     * @return
+     */
+    String securityStrategyName() default "MODE_THREADLOCAL";
+
+    /**
+     * Additional claims to be returned by the introspection.
+     *
+     * @return
+     */
+    WithMockJwtTokenClaim[] additionalClaims() default {};
+
+    /**
+     * Large synthetic claims, see {@link WithMockJwtToken#generatedClaims()}.
+     *
+     * @return
+     */
+    WithMockJwtTokenGeneratedClaim[] generatedClaims() default {};
+
+    /**
+     * Determines when the {@link SecurityContext} is setup. The default is before
+     * {@link TestExecutionEvent#TEST_METHOD} which occurs during
+     * {@link org.springframework.test.context.TestExecutionListener#beforeTestMethod(TestContext)}
+     *
+     * @return the {@link TestExecutionEvent} to initialize before
+     */
+    @AliasFor(annotation = WithSecurityContext.class)
+    TestExecutionEvent setupBefore() default TestExecutionEvent.TEST_METHOD;
+}
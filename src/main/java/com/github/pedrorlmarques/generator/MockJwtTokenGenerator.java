@@ -0,0 +1,543 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.generator;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.support.MockJwtTokenKeys;
+import com.github.pedrorlmarques.support.MockJwtTokenSigner;
+import com.github.pedrorlmarques.support.WithMockJwtTokenAttributes;
+import com.nimbusds.jose.JWSAlgorithm;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Mints large numbers of distinct signed tokens, e.g. to load test resource servers, reusing the claim model of
+ * {@link WithMockJwtToken}.
+ * <p>
+ * Subjects and additional claims are templates where {@code {n}} is replaced by the token index and {@code {n%K}} by
+ * the index modulo K, roles are assigned from a weighted distribution. Tokens are minted in batches across a
+ * {@link ForkJoinPool} and streamed to a file, one per line, so memory use does not depend on the number of tokens.
+ * HS256 is by far the fastest algorithm to mint with.
+ * <pre>
+ * java -cp ... com.github.pedrorlmarques.generator.MockJwtTokenGenerator --count=1000000 --output=tokens.txt \
+ *     --subject=user-{n} --roles=ADMIN:1,USER:99 --claim=tenant=tenant-{n%100} --algorithm=HS256
+ * </pre>
+ */
+public final class MockJwtTokenGenerator {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Template subject;
+
+    private final Map<String, Template> claims;
+
+    private final List<List<String>> roles;
+
+    // the authorities of each entry of roles, resolved once
+    private final List<List<String>> authorities;
+
+    private final int[] roleWeights;
+
+    private final String rolesClaim;
+
+    private final String[] scope;
+
+    private final String[] audience;
+
+    private final String expiresAt;
+
+    private final JWSAlgorithm algorithm;
+
+    private final int parallelism;
+
+    private final int batchSize;
+
+    private MockJwtTokenGenerator(Builder builder) {
+        this.subject = new Template(builder.subject);
+        this.claims = new LinkedHashMap<>();
+        builder.claims.forEach((name, template) -> this.claims.put(name, new Template(template)));
+        this.roles = new ArrayList<>(builder.roles.keySet());
+        this.authorities = new ArrayList<>(this.roles.size());
+        this.roleWeights = new int[this.roles.size()];
+        long totalWeight = 0;
+        for (int i = 0; i < this.roleWeights.length; i++) {
+            this.authorities.add(WithMockJwtTokenAttributes.resolveAuthorities(
+                    this.roles.get(i).toArray(new String[0]), new String[0]));
+            totalWeight += builder.roles.get(this.roles.get(i));
+            Assert.isTrue(totalWeight <= Integer.MAX_VALUE, "the total weight of the roles cannot exceed "
+                    + Integer.MAX_VALUE);
+            this.roleWeights[i] = (int) totalWeight;
+        }
+        this.rolesClaim = builder.rolesClaim;
+        this.scope = builder.scope;
+        this.audience = builder.audience;
+        if (!builder.expiresAt.isEmpty()) {
+            try {
+                Instant.parse(builder.expiresAt);
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("expiresAt must be an ISO-8601 instant Got " + builder.expiresAt, ex);
+            }
+        }
+        this.expiresAt = builder.expiresAt;
+        this.algorithm = MockJwtTokenKeys.algorithm(builder.algorithm);
+        this.parallelism = builder.parallelism;
+        this.batchSize = builder.batchSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Mints the token of the given index.
+     *
+     * @param index the index
+     * @return the signed token
+     */
+    public String mint(long index) {
+        int bucket = bucket(index);
+        WithMockJwtTokenAttributes.Builder attributes = WithMockJwtTokenAttributes.builder()
+                .signatureAlgorithm(this.algorithm.getName())
+                .subject(this.subject.expand(index))
+                .scope(this.scope)
+                .audience(this.audience)
+                .expiresAt(this.expiresAt)
+                .authorities(bucket < 0 ? Collections.emptyList() : this.authorities.get(bucket));
+        if (!this.rolesClaim.isEmpty()) {
+            attributes.claim(this.rolesClaim, bucket < 0 ? Collections.emptyList() : this.roles.get(bucket));
+        }
+        for (Map.Entry<String, Template> claim : this.claims.entrySet()) {
+            attributes.claim(claim.getKey(), claim.getValue().expand(index));
+        }
+        return MockJwtTokenSigner.sign(this.algorithm, attributes.build().toClaims()).serialize();
+    }
+
+    /**
+     * Mints {@code count} tokens, indexes 0 to {@code count - 1}, and writes them to the given file, one per line and
+     * in index order.
+     *
+     * @param count  the number of tokens
+     * @param output the file, replaced if it exists
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public void generate(long count, Path output) throws IOException {
+        Assert.isTrue(count >= 0, () -> "count cannot be negative Got " + count);
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            String[] tokens = new String[(int) Math.min(this.batchSize, count)];
+            for (long first = 0; first < count; first += tokens.length) {
+                int size = (int) Math.min(tokens.length, count - first);
+                long batch = first;
+                pool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> tokens[i] = mint(batch + i))).get();
+                for (int i = 0; i < size; i++) {
+                    write(channel, buffer, tokens[i]);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating tokens", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Unable to mint tokens", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, String token) throws IOException {
+        if (buffer.remaining() < token.length() + 1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        // compact JWTs are base64url, hence ASCII
+        for (int i = 0; i < token.length(); i++) {
+            buffer.put((byte) token.charAt(i));
+        }
+        buffer.put((byte) '\n');
+    }
+
+    // the entry of roles assigned to the given index, -1 without roles
+    private int bucket(long index) {
+        if (this.roles.isEmpty()) {
+            return -1;
+        }
+        long bucket = index % this.roleWeights[this.roleWeights.length - 1];
+        int i = 0;
+        while (bucket >= this.roleWeights[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Command line entry point, options are given as {@code --name=value}: {@code count}, {@code output},
+     * {@code subject}, {@code roles} ({@code ROLE+ROLE:weight,...}), {@code roles-claim}, {@code scope},
+     * {@code audience}, {@code claim} ({@code name=template}, repeatable), {@code expires-at}, {@code algorithm},
+     * {@code parallelism} and {@code batch-size}. Invalid options exit with status 2 and the usage.
+     *
+     * @param args the options
+     * @throws IOException if the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        options.generator.generate(options.count, options.output);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Generated " + options.count + " tokens in " + millis + " ms to "
+                + options.output.toAbsolutePath());
+    }
+
+    /**
+     * The parsed command line options.
+     */
+    static final class Options {
+
+        static final String USAGE = "Usage: MockJwtTokenGenerator [--count=N] [--output=FILE] [--subject=TEMPLATE] "
+                + "[--roles=ROLE+ROLE:WEIGHT,...] [--roles-claim=NAME] [--scope=A,B] [--audience=A,B] "
+                + "[--claim=NAME=TEMPLATE]... [--expires-at=INSTANT] [--algorithm=ALG] [--parallelism=N] "
+                + "[--batch-size=N]";
+
+        final MockJwtTokenGenerator generator;
+
+        final long count;
+
+        final Path output;
+
+        private Options(MockJwtTokenGenerator generator, long count, Path output) {
+            this.generator = generator;
+            this.count = count;
+            this.output = output;
+        }
+
+        /**
+         * Parses the given options.
+         *
+         * @param args the options
+         * @return the options
+         * @throws IllegalArgumentException if an option is unknown or invalid
+         */
+        static Options parse(String[] args) {
+            Builder builder = builder();
+            long count = 1000;
+            Path output = Paths.get("tokens.txt");
+            for (String arg : args) {
+                Assert.isTrue(arg.startsWith("--") && arg.contains("="), () -> "Expected --name=value Got " + arg);
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "count":
+                        count = number(name, value);
+                        Assert.isTrue(count >= 0, () -> "count cannot be negative Got " + value);
+                        break;
+                    case "output":
+                        output = Paths.get(value);
+                        break;
+                    case "subject":
+                        builder.subject(value);
+                        break;
+                    case "roles":
+                        builder.roles(value);
+                        break;
+                    case "roles-claim":
+                        builder.rolesClaim(value);
+                        break;
+                    case "scope":
+                        builder.scope(value.split(","));
+                        break;
+                    case "audience":
+                        builder.audience(value.split(","));
+                        break;
+                    case "claim":
+                        Assert.isTrue(value.indexOf('=') > 0, () -> "Expected --claim=name=template Got " + arg);
+                        builder.claim(value.substring(0, value.indexOf('=')), value.substring(value.indexOf('=') + 1));
+                        break;
+                    case "expires-at":
+                        builder.expiresAt(value);
+                        break;
+                    case "algorithm":
+                        builder.algorithm(value);
+                        break;
+                    case "parallelism":
+                        builder.parallelism(intNumber(name, value));
+                        break;
+                    case "batch-size":
+                        builder.batchSize(intNumber(name, value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            return new Options(builder.build(), count, output);
+        }
+
+        private static long number(String name, String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(name + " must be a number Got " + value, ex);
+            }
+        }
+
+        private static int intNumber(String name, String value) {
+            long number = number(name, value);
+            Assert.isTrue(number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE,
+                    () -> name + " cannot exceed " + Integer.MAX_VALUE + " Got " + value);
+            return (int) number;
+        }
+    }
+
+    /**
+     * Builder for {@link MockJwtTokenGenerator}.
+     */
+    public static final class Builder {
+
+        private String subject = "user-{n}";
+
+        private final Map<String, String> claims = new LinkedHashMap<>();
+
+        private final Map<List<String>, Integer> roles = new LinkedHashMap<>();
+
+        private String rolesClaim = "";
+
+        private String[] scope = new String[0];
+
+        private String[] audience = new String[0];
+
+        private String expiresAt = "";
+
+        private String algorithm = "HS256";
+
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private int batchSize = 16_384;
+
+        private Builder() {
+        }
+
+        /**
+         * The subject template. The default is {@code user-{n}}.
+         *
+         * @param subject the template
+         * @return this builder
+         */
+        public Builder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        /**
+         * Adds a claim template.
+         *
+         * @param name     the claim name
+         * @param template the claim value template
+         * @return this builder
+         */
+        public Builder claim(String name, String template) {
+            this.claims.put(name, template);
+            return this;
+        }
+
+        /**
+         * Adds roles assigned to {@code weight} tokens out of the total weight of all the roles.
+         *
+         * @param weight the weight
+         * @param roles  the roles, without the "ROLE_" prefix
+         * @return this builder
+         */
+        public Builder roles(int weight, String... roles) {
+            Assert.isTrue(weight > 0, "weight must be positive");
+            this.roles.put(Collections.unmodifiableList(Arrays.asList(roles)), weight);
+            return this;
+        }
+
+        /**
+         * Adds roles from a distribution such as {@code ADMIN+USER:1,USER:99}.
+         *
+         * @param distribution the distribution
+         * @return this builder
+         */
+        public Builder roles(String distribution) {
+            for (String bucket : distribution.split(",")) {
+                int separator = bucket.lastIndexOf(':');
+                int weight = separator < 0 ? 1 : weight(bucket.substring(separator + 1), distribution);
+                roles(weight, (separator < 0 ? bucket : bucket.substring(0, separator)).split("\\+"));
+            }
+            return this;
+        }
+
+        private static int weight(String weight, String distribution) {
+            try {
+                return Integer.parseInt(weight);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Expected ROLE+ROLE:weight,... Got " + distribution, ex);
+            }
+        }
+
+        /**
+         * The claim carrying the roles, none by default.
+         *
+         * @param rolesClaim the claim name
+         * @return this builder
+         */
+        public Builder rolesClaim(String rolesClaim) {
+            this.rolesClaim = rolesClaim;
+            return this;
+        }
+
+        public Builder scope(String... scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        public Builder audience(String... audience) {
+            this.audience = audience;
+            return this;
+        }
+
+        public Builder expiresAt(String expiresAt) {
+            this.expiresAt = expiresAt;
+            return this;
+        }
+
+        /**
+         * The signature algorithm. The default is HS256.
+         *
+         * @param algorithm the algorithm
+         * @return this builder
+         */
+        public Builder algorithm(String algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * The number of threads minting tokens. The default is the number of processors.
+         *
+         * @param parallelism the parallelism
+         * @return this builder
+         */
+        public Builder parallelism(int parallelism) {
+            Assert.isTrue(parallelism > 0, "parallelism must be positive");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * The number of tokens minted before being written, which bounds the memory use.
+         *
+         * @param batchSize the batch size
+         * @return this builder
+         */
+        public Builder batchSize(int batchSize) {
+            Assert.isTrue(batchSize > 0, "batchSize must be positive");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public MockJwtTokenGenerator build() {
+            return new MockJwtTokenGenerator(this);
+        }
+    }
+
+    private static final class Template {
+
+        private final String[] literals;
+
+        private final long[] modulos;
+
+        private Template(String template) {
+            List<String> literals = new ArrayList<>();
+            List<Long> modulos = new ArrayList<>();
+            int from = 0;
+            int start;
+            while ((start = template.indexOf("{n", from)) >= 0) {
+                int end = template.indexOf('}', start);
+                Assert.isTrue(end > 0, () -> "Unterminated placeholder in " + template);
+                String placeholder = template.substring(start + 2, end);
+                Assert.isTrue(placeholder.isEmpty() || placeholder.startsWith("%"),
+                        () -> "Expected {n} or {n%K} in " + template);
+                literals.add(template.substring(from, start));
+                modulos.add(placeholder.isEmpty() ? 0L : modulo(placeholder.substring(1), template));
+                from = end + 1;
+            }
+            literals.add(template.substring(from));
+            this.literals = literals.toArray(new String[0]);
+            this.modulos = new long[modulos.size()];
+            for (int i = 0; i < this.modulos.length; i++) {
+                this.modulos[i] = modulos.get(i);
+            }
+        }
+
+        // 0 stands for {n}, K must be positive
+        private static long modulo(String modulo, String template) {
+            long value;
+            try {
+                value = Long.parseLong(modulo);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Expected {n} or {n%K} in " + template, ex);
+            }
+            Assert.isTrue(value > 0, () -> "K must be positive in {n%K} Got " + template);
+            return value;
+        }
+
+        private String expand(long index) {
+            if (this.modulos.length == 0) {
+                return this.literals[0];
+            }
+            StringBuilder value = new StringBuilder(this.literals[0]);
+            for (int i = 0; i < this.modulos.length; i++) {
+                value.append(this.modulos[i] == 0 ? index : index % this.modulos[i]).append(this.literals[i + 1]);
+            }
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.processor;
+
+import com.github.pedrorlmarques.annotation.WithClassScopedMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix;
+import com.github.pedrorlmarques.support.MockJwtTokenClaimValues;
+import com.github.pedrorlmarques.support.WithMockJwtTokenAttributes;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validates every {@link WithMockJwtToken} usage at compile time, including the ones nested in
+ * {@link WithMockJwtTokenMatrix} and {@link WithClassScopedMockJwtToken}.
+ * <p>
+ * Missing subjects, invalid roles, roles combined with authorities, malformed instants and durations, unsupported
+ * signature algorithms, claim values not matching their type and negative generated claim counts are reported as
+ * compilation errors instead of failing the test at runtime.
+ */
+@SupportedAnnotationTypes({
+        "com.github.pedrorlmarques.annotation.WithMockJwtToken",
+        "com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix",
+        "com.github.pedrorlmarques.annotation.WithClassScopedMockJwtToken"})
+public class WithMockJwtTokenProcessor extends AbstractProcessor {
+
+    private static final Set<String> SIGNATURE_ALGORITHMS = new LinkedHashSet<>(Arrays.asList(
+            "", "RS256", "RS384", "RS512", "ES256", "ES384", "ES512", "HS256", "HS384", "HS512"));
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                // inherited annotations are validated where they are declared
+                AnnotationMirror mirror = findMirror(element, annotation);
+                if (mirror == null) {
+                    continue;
+                }
+                try {
+                    validate(element, mirror);
+                } catch (RuntimeException ex) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                            "Unable to validate " + annotation.getSimpleName() + ": " + ex, element, mirror);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void validate(Element element, AnnotationMirror reported) {
+        AnnotationValue value = null;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : reported.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                value = entry.getValue();
+            }
+        }
+        String annotationType = ((TypeElement) reported.getAnnotationType().asElement()).getQualifiedName().toString();
+        if (annotationType.equals(WithMockJwtToken.class.getName())) {
+            validate(element, reported, reported);
+        } else if (value != null && value.getValue() instanceof AnnotationMirror) {
+            validate(element, reported, (AnnotationMirror) value.getValue());
+        } else {
+            for (AnnotationValue nested : list(value)) {
+                validate(element, reported, (AnnotationMirror) nested.getValue());
+            }
+        }
+    }
+
+    private void validate(Element element, AnnotationMirror reported, AnnotationMirror mirror) {
+        Map<String, AnnotationValue> values = new HashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            values.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+        }
+
+        if (string(values.get("subject")).isEmpty() && string(values.get("fixture")).isEmpty()) {
+            error(element, reported, mirror, null, "subject must be set unless a fixture is used");
+        }
+
+        try {
+            WithMockJwtTokenAttributes.resolveAuthorities(strings(values.get("roles")),
+                    strings(values.get("authorities")));
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            error(element, reported, mirror, values.get("roles"), ex.getMessage());
+        }
+
+        for (String instant : new String[]{"expiresAt", "issuedAt"}) {
+            String value = string(values.get(instant));
+            if (!value.isEmpty()) {
+                try {
+                    Instant.parse(value);
+                } catch (DateTimeParseException ex) {
+                    error(element, reported, mirror, values.get(instant), instant + " must be an ISO-8601 instant Got " + value);
+                }
+            }
+        }
+
+        String expiresIn = string(values.get("expiresIn"));
+        if (!expiresIn.isEmpty()) {
+            try {
+                Duration.parse(expiresIn);
+                if (!string(values.get("expiresAt")).isEmpty()) {
+                    error(element, reported, mirror, values.get("expiresIn"), "You cannot define expiresAt attribute "
+                            + string(values.get("expiresAt")) + " with expiresIn attribute " + expiresIn);
+                }
+            } catch (DateTimeParseException ex) {
+                error(element, reported, mirror, values.get("expiresIn"), "expiresIn must be an ISO-8601 duration Got " + expiresIn);
+            }
+        }
+
+        String signatureAlgorithm = string(values.get("signatureAlgorithm"));
+        if (!SIGNATURE_ALGORITHMS.contains(signatureAlgorithm)) {
+            error(element, reported, mirror, values.get("signatureAlgorithm"), "Unsupported signature algorithm "
+                    + signatureAlgorithm + ", expected one of " + SIGNATURE_ALGORITHMS);
+        }
+
+        for (AnnotationValue claim : list(values.get("additionalClaims"))) {
+            Map<String, AnnotationValue> claimValues = claimValues(claim);
+            try {
+                MockJwtTokenClaimValues.parse(claimType(claimValues), string(claimValues.get("value")));
+            } catch (IllegalArgumentException ex) {
+                error(element, reported, mirror, claim, "Claim " + string(claimValues.get("name")) + ": " + ex.getMessage());
+            }
+        }
+
+        for (AnnotationValue generatedClaim : list(values.get("generatedClaims"))) {
+            Map<String, AnnotationValue> claimValues = claimValues(generatedClaim);
+            int count = (Integer) claimValues.get("count").getValue();
+            if (count < 0) {
+                error(element, reported, mirror, generatedClaim, "Generated claim " + string(claimValues.get("name"))
+                        + ": count cannot be negative Got " + count);
+            }
+        }
+    }
+
+    private Map<String, AnnotationValue> claimValues(AnnotationValue claim) {
+        Map<String, AnnotationValue> claimValues = new HashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults((AnnotationMirror) claim.getValue()).entrySet()) {
+            claimValues.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+        }
+        return claimValues;
+    }
+
+    private static WithMockJwtTokenClaim.Type claimType(Map<String, AnnotationValue> claimValues) {
+        AnnotationValue type = claimValues.get("type");
+        return type == null ? WithMockJwtTokenClaim.Type.STRING
+                : WithMockJwtTokenClaim.Type.valueOf(((VariableElement) type.getValue()).getSimpleName().toString());
+    }
+
+    private static AnnotationMirror findMirror(Element element, TypeElement annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    // errors on a nested annotation are reported on the annotation of the element
+    private void error(Element element, AnnotationMirror reported, AnnotationMirror mirror, AnnotationValue value,
+                       String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element, reported,
+                reported == mirror ? value : null);
+    }
+
+    private static String string(AnnotationValue value) {
+        return value == null ? "" : (String) value.getValue();
+    }
+
+    private static String[] strings(AnnotationValue value) {
+        List<? extends AnnotationValue> values = list(value);
+        String[] strings = new String[values.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = (String) values.get(i).getValue();
+        }
+        return strings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<? extends AnnotationValue> list(AnnotationValue value) {
+        return value == null ? new ArrayList<>() : (List<? extends AnnotationValue>) value.getValue();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the {@code ExecutorService} and {@code TaskDecorator} beans of the application propagate the
+ * {@link com.github.pedrorlmarques.annotation.WithMockJwtToken} identity to the tasks they run, so that
+ * {@code @Async} methods see it.
+ * <pre>
+ * &#064;SpringBootTest
+ * &#064;AutoConfigureMockJwtTokenContextPropagation
+ * class AsyncReportTest {
+ * </pre>
+ *
+ * @see MockJwtTokenContextPropagation
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+@Import(MockJwtTokenContextPropagationConfiguration.class)
+public @interface AutoConfigureMockJwtTokenContextPropagation {
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.util.Map;
+
+/**
+ * The {@code Authorization} header values of the current {@link com.github.pedrorlmarques.annotation.WithMockJwtToken}
+ * identity, built once per token. A token signed with a key retired since is signed again.
+ */
+final class BearerTokenHeaders {
+
+    private static final Map<Jwt, Header> headers = new ConcurrentReferenceHashMap<>();
+
+    private BearerTokenHeaders() {
+    }
+
+    /**
+     * The {@code Bearer} header value of the {@link JwtAuthenticationToken} held by the
+     * {@link org.springframework.security.test.context.TestSecurityContextHolder}.
+     *
+     * @return the header value
+     * @throws IllegalStateException if the current authentication is not a {@link JwtAuthenticationToken}
+     */
+    static String current() {
+        Jwt jwt = WithMockJwtTokenSecurityContextFactory.getCurrentAuthentication().getToken();
+        Header header = headers.get(jwt);
+        if (header == null || !MockJwtTokenKeys.isCurrent(header.jwt)) {
+            header = new Header(MockJwtTokenKeys.isCurrent(jwt) ? jwt : WithMockJwtTokenSecurityContextFactory.signAgain(jwt));
+            headers.put(jwt, header);
+        }
+        return header.value;
+    }
+
+    private static final class Header {
+
+        private final Jwt jwt;
+
+        private final String value;
+
+        private Header(Jwt jwt) {
+            this.jwt = jwt;
+            this.value = "Bearer " + jwt.getTokenValue();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link OpaqueTokenIntrospector} caching the principals of its delegate for a time to live, and never beyond the
+ * expiration of the token. Failed introspections are not cached.
+ * <p>
+ * Expired entries are evicted as the cache is used, the least recently cached ones first, and at most
+ * {@link #setMaximumSize(int) maximumSize} entries are kept. The time is read from the {@link MockJwtTokenClock}
+ * unless {@link #setClock(Clock) configured}, so that tests can expire entries without waiting. Concurrent misses for
+ * the same token may all call the delegate.
+ * <pre>
+ * OpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(
+ *         new NimbusOpaqueTokenIntrospector(introspectionServer.getIntrospectionUri(), "client", "secret"),
+ *         Duration.ofMinutes(5));
+ * </pre>
+ */
+public class CachingOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final OpaqueTokenIntrospector delegate;
+
+    private final Duration timeToLive;
+
+    private final Map<String, CachedPrincipal> principals = new LinkedHashMap<>();
+
+    private Clock clock = MockJwtTokenClock.get();
+
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    public CachingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate, Duration timeToLive) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.isTrue(timeToLive != null && !timeToLive.isNegative() && !timeToLive.isZero(),
+                "timeToLive must be positive");
+        this.delegate = delegate;
+        this.timeToLive = timeToLive;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock cannot be null");
+        this.clock = clock;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+        this.maximumSize = maximumSize;
+    }
+
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        Instant now = this.clock.instant();
+        synchronized (this.principals) {
+            evictExpired(now);
+            CachedPrincipal cached = this.principals.get(token);
+            if (cached != null && cached.expiresAt.isAfter(now)) {
+                this.hitCount.increment();
+                return cached.principal;
+            }
+        }
+
+        this.missCount.increment();
+        OAuth2AuthenticatedPrincipal principal = this.delegate.introspect(token);
+        Instant expiresAt = now.plus(this.timeToLive);
+        Object tokenExpiresAt = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP);
+        if (tokenExpiresAt instanceof Instant && ((Instant) tokenExpiresAt).isBefore(expiresAt)) {
+            expiresAt = (Instant) tokenExpiresAt;
+        }
+
+        synchronized (this.principals) {
+            // moved to the tail, the entries being kept in the order they were cached
+            this.principals.remove(token);
+            this.principals.put(token, new CachedPrincipal(principal, expiresAt));
+            while (this.principals.size() > this.maximumSize) {
+                Iterator<CachedPrincipal> eldest = this.principals.values().iterator();
+                eldest.next();
+                eldest.remove();
+                this.evictionCount.increment();
+            }
+        }
+        return principal;
+    }
+
+    /**
+     * The number of principals returned from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * The number of calls to the delegate.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * The number of entries evicted, expired or beyond the maximum size.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    public void resetCounters() {
+        this.hitCount.reset();
+        this.missCount.reset();
+        this.evictionCount.reset();
+    }
+
+    /**
+     * Evicts all the entries.
+     */
+    public void clear() {
+        synchronized (this.principals) {
+            this.principals.clear();
+        }
+    }
+
+    // the entries are mostly ordered by expiration, the ones expiring early with their token are replaced when read
+    private void evictExpired(Instant now) {
+        Iterator<CachedPrincipal> iterator = this.principals.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt.isAfter(now)) {
+                return;
+            }
+            iterator.remove();
+            this.evictionCount.increment();
+        }
+    }
+
+    private static final class CachedPrincipal {
+
+        private final OAuth2AuthenticatedPrincipal principal;
+
+        private final Instant expiresAt;
+
+        private CachedPrincipal(OAuth2AuthenticatedPrincipal principal, Instant expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
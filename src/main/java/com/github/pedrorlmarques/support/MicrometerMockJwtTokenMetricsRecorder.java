@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the identity set ups to Micrometer:
+ * <ul>
+ * <li>{@value #SETUP_TIMER} timer</li>
+ * <li>{@value #ALLOCATED_SUMMARY} distribution summary, in bytes</li>
+ * </ul>
+ * both tagged with {@code test.class}, {@code identity} and {@code cache} ({@code hit} or {@code miss}). When looked up
+ * by the {@link java.util.ServiceLoader} the {@link Metrics#globalRegistry global registry} is used.
+ */
+public class MicrometerMockJwtTokenMetricsRecorder implements MockJwtTokenMetricsRecorder {
+
+    public static final String SETUP_TIMER = "mock.jwt.token.setup";
+
+    public static final String ALLOCATED_SUMMARY = "mock.jwt.token.setup.allocated";
+
+    private final MeterRegistry meterRegistry;
+
+    public MicrometerMockJwtTokenMetricsRecorder() {
+        this(Metrics.globalRegistry);
+    }
+
+    public MicrometerMockJwtTokenMetricsRecorder(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void record(MockJwtTokenSetup setup) {
+        Tags tags = Tags.of("test.class", setup.getTestClass(), "identity", String.valueOf(setup.getIdentity()),
+                "cache", setup.isCacheHit() ? "hit" : "miss");
+        Timer.builder(SETUP_TIMER)
+                .tags(tags)
+                .register(this.meterRegistry)
+                .record(setup.getDurationNanos(), TimeUnit.NANOSECONDS);
+        if (setup.getAllocatedBytes() >= 0) {
+            DistributionSummary.builder(ALLOCATED_SUMMARY)
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(this.meterRegistry)
+                    .record(setup.getAllocatedBytes());
+        }
+    }
+}
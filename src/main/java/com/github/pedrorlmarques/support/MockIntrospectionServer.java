@@ -0,0 +1,244 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockOpaqueToken;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * An in-process HTTP server standing in for the token introspection endpoint (RFC 7662) of an authorization server,
+ * so that resource servers configured with
+ * {@code spring.security.oauth2.resourceserver.opaquetoken.introspection-uri} can introspect the
+ * {@link WithMockOpaqueToken} tokens without any network access. Unknown tokens are answered as inactive, the client
+ * credentials are not checked.
+ * <p>
+ * The latency of the responses is configurable and the requests are counted, which allows verifying and benchmarking
+ * how often an introspector, e.g. a {@link CachingOpaqueTokenIntrospector}, really calls the endpoint.
+ * <pre>
+ * try (MockIntrospectionServer introspectionServer = MockIntrospectionServer.start()) {
+ *     OpaqueTokenIntrospector introspector = new NimbusOpaqueTokenIntrospector(
+ *             introspectionServer.getIntrospectionUri(), "client", "secret");
+ *     ...
+ * }
+ * </pre>
+ */
+public final class MockIntrospectionServer implements AutoCloseable {
+
+    public static final String INTROSPECTION_PATH = "/oauth2/introspect";
+
+    private static final byte[] INACTIVE = "{\"active\":false}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong activeCount = new AtomicLong();
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private MockIntrospectionServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on a random port of the loopback interface.
+     *
+     * @return the started server
+     */
+    public static MockIntrospectionServer start() {
+        return start(0);
+    }
+
+    /**
+     * Starts a server on the given port of the loopback interface.
+     *
+     * @param port the port, 0 for a random one
+     * @return the started server
+     */
+    public static MockIntrospectionServer start(int port) {
+        HttpServer httpServer;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to start the introspection server", ex);
+        }
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-introspection-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MockIntrospectionServer introspectionServer = new MockIntrospectionServer(httpServer, executor);
+        httpServer.createContext(INTROSPECTION_PATH, introspectionServer::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return introspectionServer;
+    }
+
+    /**
+     * The URI to use as {@code spring.security.oauth2.resourceserver.opaquetoken.introspection-uri}.
+     *
+     * @return the introspection URI
+     */
+    public String getIntrospectionUri() {
+        InetSocketAddress address = this.server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + INTROSPECTION_PATH;
+    }
+
+    /**
+     * Delays every response, like a remote authorization server would. The default is none.
+     *
+     * @param latency the delay
+     * @return this server
+     */
+    public MockIntrospectionServer latency(Duration latency) {
+        Assert.isTrue(latency != null && !latency.isNegative(), "latency cannot be negative");
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * The number of requests received.
+     *
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * The number of requests answered with an active token.
+     *
+     * @return the active count
+     */
+    public long getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    public void resetCounters() {
+        this.requestCount.set(0);
+        this.activeCount.set(0);
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            this.requestCount.incrementAndGet();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String token;
+            try (InputStream body = exchange.getRequestBody()) {
+                token = formParameter(StreamUtils.copyToString(body, StandardCharsets.UTF_8), "token");
+            }
+            if (token == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            delay();
+            BearerTokenAuthentication authentication = MockOpaqueTokenRegistry.find(token);
+            byte[] response = INACTIVE;
+            if (authentication != null) {
+                this.activeCount.incrementAndGet();
+                response = introspectionResponse(authentication.getTokenAttributes());
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        Duration latency = this.latency;
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency.toMillis(), latency.getNano() % 1_000_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String formParameter(String form, String name) {
+        for (String parameter : form.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && name.equals(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8))) {
+                return URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // the timestamps are seconds since the epoch and the scope is space delimited on the wire
+    private static byte[] introspectionResponse(Map<String, Object> attributes) {
+        Map<String, Object> response = new LinkedHashMap<>(attributes);
+        Object scope = response.get(OAuth2TokenIntrospectionClaimNames.SCOPE);
+        if (scope instanceof Collection) {
+            response.put(OAuth2TokenIntrospectionClaimNames.SCOPE, ((Collection<?>) scope).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(" ")));
+        }
+        for (String timestamp : new String[]{OAuth2TokenIntrospectionClaimNames.EXP,
+                OAuth2TokenIntrospectionClaimNames.IAT, OAuth2TokenIntrospectionClaimNames.NBF}) {
+            Object value = response.get(timestamp);
+            if (value instanceof Instant) {
+                response.put(timestamp, ((Instant) value).getEpochSecond());
+            }
+        }
+        return JSONObjectUtils.toJSONString(response).getBytes(StandardCharsets.UTF_8);
+    }
+}
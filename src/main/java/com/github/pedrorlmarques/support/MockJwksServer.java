@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process HTTP server publishing the public {@link MockJwtTokenKeys} as a JWK set, so that resource servers
+ * configured with {@code spring.security.oauth2.resourceserver.jwt.jwk-set-uri} can validate
+ * {@link WithMockJwtToken#signatureAlgorithm() signed} tokens without any network access.
+ * <p>
+ * The {@code Cache-Control} header and the {@code ETag} support are configurable, and the requests are counted,
+ * which allows verifying how often a decoder really fetches the keys.
+ * <pre>
+ * try (MockJwksServer jwksServer = MockJwksServer.start()) {
+ *     JwtDecoder jwtDecoder = NimbusJwtDecoder.withJwkSetUri(jwksServer.getJwkSetUri()).build();
+ *     ...
+ * }
+ * </pre>
+ */
+public final class MockJwksServer implements AutoCloseable {
+
+    public static final String JWK_SET_PATH = "/.well-known/jwks.json";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    private volatile String cacheControl = "max-age=300";
+
+    private volatile boolean etagEnabled = true;
+
+    private volatile JwkSetResponse response = new JwkSetResponse(-1, new byte[0], "");
+
+    private MockJwksServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on a random port of the loopback interface.
+     *
+     * @return the started server
+     */
+    public static MockJwksServer start() {
+        return start(0);
+    }
+
+    /**
+     * Starts a server on the given port of the loopback interface.
+     *
+     * @param port the port, 0 for a random one
+     * @return the started server
+     */
+    public static MockJwksServer start(int port) {
+        HttpServer httpServer;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to start the JWK set server", ex);
+        }
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-jwks-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MockJwksServer jwksServer = new MockJwksServer(httpServer, executor);
+        httpServer.createContext(JWK_SET_PATH, jwksServer::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return jwksServer;
+    }
+
+    /**
+     * The URI to use as {@code spring.security.oauth2.resourceserver.jwt.jwk-set-uri}.
+     *
+     * @return the JWK set URI
+     */
+    public String getJwkSetUri() {
+        InetSocketAddress address = this.server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + JWK_SET_PATH;
+    }
+
+    /**
+     * Sets the {@code Cache-Control} header of the responses, none when {@code null}. The default is
+     * {@code max-age=300}.
+     *
+     * @param cacheControl the header value
+     * @return this server
+     */
+    public MockJwksServer cacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+        return this;
+    }
+
+    /**
+     * Whether responses carry an {@code ETag} and conditional requests are answered with 304. The default is true.
+     *
+     * @param etagEnabled whether ETags are enabled
+     * @return this server
+     */
+    public MockJwksServer etag(boolean etagEnabled) {
+        this.etagEnabled = etagEnabled;
+        return this;
+    }
+
+    /**
+     * Simulates a key rotation, see {@link MockJwtTokenKeys#rotate()}.
+     */
+    public void rotateKeys() {
+        MockJwtTokenKeys.rotate();
+    }
+
+    /**
+     * The number of requests received, including the conditional ones.
+     *
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * The number of requests answered with 304 Not Modified.
+     *
+     * @return the not modified count
+     */
+    public long getNotModifiedCount() {
+        return this.notModifiedCount.get();
+    }
+
+    public void resetCounters() {
+        this.requestCount.set(0);
+        this.notModifiedCount.set(0);
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            this.requestCount.incrementAndGet();
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            JwkSetResponse jwkSet = jwkSetResponse();
+            String cacheControl = this.cacheControl;
+            if (cacheControl != null) {
+                exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+            }
+            if (this.etagEnabled) {
+                exchange.getResponseHeaders().set("ETag", jwkSet.etag);
+                if (jwkSet.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    this.notModifiedCount.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, jwkSet.body.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(jwkSet.body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JwkSetResponse jwkSetResponse() {
+        JwkSetResponse current = this.response;
+        int version = MockJwtTokenKeys.version();
+        if (current.version != version) {
+            byte[] body = MockJwtTokenKeys.jwkSet().toPublicJWKSet().toString().getBytes(StandardCharsets.UTF_8);
+            current = new JwkSetResponse(version, body, "\"" + DigestUtils.md5DigestAsHex(body) + "\"");
+            this.response = current;
+        }
+        return current;
+    }
+
+    private static final class JwkSetResponse {
+
+        private final int version;
+
+        private final byte[] body;
+
+        private final String etag;
+
+        private JwkSetResponse(int version, byte[] body, String etag) {
+            this.version = version;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link JwtAuthenticationToken} whose authorities are an immutable hashed set, so that looking one up does not
+ * depend on how many the token carries.
+ * <p>
+ * The token is cached and shared by every test with the same identity, it is immutable: its details and
+ * authenticated flag cannot be changed.
+ */
+final class MockJwtAuthenticationToken extends JwtAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String SHARED_MESSAGE = "The @WithMockJwtToken authentication is shared by the tests with "
+            + "the same identity and cannot be changed";
+
+    private final Set<GrantedAuthority> authorities;
+
+    private final int hashCode;
+
+    // AbstractAuthenticationToken would copy the authorities into a list of its own, they are only held here
+    MockJwtAuthenticationToken(Jwt jwt, Set<GrantedAuthority> authorities, String name) {
+        super(jwt, Collections.emptyList(), name);
+        this.authorities = authorities;
+        int code = super.hashCode();
+        for (GrantedAuthority authority : authorities) {
+            code ^= authority.hashCode();
+        }
+        this.hashCode = code;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return this.authorities;
+    }
+
+    // called once by the constructor of JwtAuthenticationToken, before the authorities are assigned
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        Assert.state(this.authorities == null, SHARED_MESSAGE);
+        super.setAuthenticated(authenticated);
+    }
+
+    @Override
+    public void setDetails(Object details) {
+        throw new IllegalStateException(SHARED_MESSAGE);
+    }
+
+    // the authorities of AbstractAuthenticationToken are a list, which never equals a set
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MockJwtAuthenticationToken)) {
+            return false;
+        }
+        MockJwtAuthenticationToken that = (MockJwtAuthenticationToken) obj;
+        return this.authorities.equals(that.authorities)
+                && getToken().equals(that.getToken())
+                && Objects.equals(getName(), that.getName())
+                && Objects.equals(getDetails(), that.getDetails())
+                && isAuthenticated() == that.isAuthenticated();
+    }
+
+    // like AbstractAuthenticationToken, computed once as nothing can change
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [Principal=" + getPrincipal() + ", Credentials=[PROTECTED], Authenticated="
+                + isAuthenticated() + ", Details=" + getDetails() + ", Granted Authorities=" + this.authorities + "]";
+    }
+}
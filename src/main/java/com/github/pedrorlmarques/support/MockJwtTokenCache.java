@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.util.Assert;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded concurrent cache, a drop-in for {@link org.springframework.util.ConcurrentLruCache} whose generator does
+ * not run under a cache wide lock.
+ * <p>
+ * Hits take no lock. A miss builds the value under the lock of its own key only, so distinct keys are built in
+ * parallel and the same key once. When the cache is full the least recently used entries are evicted first, recency
+ * being approximated with a reference bit given a second chance (CLOCK), the eviction only synchronizing the threads
+ * adding entries.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class MockJwtTokenCache<K, V> {
+
+    private final int maxSize;
+
+    private final Function<K, V> generator;
+
+    private final ConcurrentHashMap<K, Node<K, V>> nodes = new ConcurrentHashMap<>();
+
+    // the entries in insertion order, the eviction candidates
+    private final Queue<Node<K, V>> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a cache filled by {@link #put} and {@link #merge} only.
+     *
+     * @param maxSize the maximum number of entries
+     */
+    MockJwtTokenCache(int maxSize) {
+        this(maxSize, key -> {
+            throw new IllegalStateException("No value registered for " + key);
+        });
+    }
+
+    MockJwtTokenCache(int maxSize, Function<K, V> generator) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.notNull(generator, "generator cannot be null");
+        this.maxSize = maxSize;
+        this.generator = generator;
+    }
+
+    /**
+     * Returns the value of the given key, built by the generator on a miss.
+     *
+     * @param key the key
+     * @return the value
+     */
+    V get(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        if (node == null) {
+            Node<K, V> created = new Node<>(key);
+            node = this.nodes.putIfAbsent(key, created);
+            if (node == null) {
+                node = created;
+                added(node);
+            } else {
+                node.touch();
+            }
+        } else {
+            node.touch();
+        }
+        try {
+            return node.get(this.generator);
+        } catch (RuntimeException | Error ex) {
+            // let the next call retry
+            if (this.nodes.remove(key, node)) {
+                this.queue.remove(node);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the value of the given key, built again by the generator when it is no longer current.
+     *
+     * @param key     the key
+     * @param current whether a cached value is current
+     * @return the value
+     */
+    V get(K key, Predicate<? super V> current) {
+        V value = get(key);
+        if (current.test(value)) {
+            return value;
+        }
+        value = this.generator.apply(key);
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * Returns the value of the given key, without building it.
+     *
+     * @param key the key
+     * @return the value, {@code null} if absent
+     */
+    V find(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        if (node == null || !node.built) {
+            return null;
+        }
+        node.touch();
+        return node.value;
+    }
+
+    boolean contains(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        return node != null && node.built;
+    }
+
+    boolean contains(K key, Predicate<? super V> current) {
+        Node<K, V> node = this.nodes.get(key);
+        return node != null && node.built && current.test(node.value);
+    }
+
+    void put(K key, V value) {
+        merge(key, value, (previous, current) -> current);
+    }
+
+    /**
+     * Associates the given value with the key, or the result of the given function when a value is present.
+     *
+     * @param key      the key
+     * @param value    the value
+     * @param function combines the present value with the given one
+     */
+    void merge(K key, V value, BinaryOperator<V> function) {
+        Node<K, V> created = new Node<>(key);
+        Node<K, V> node = this.nodes.compute(key, (k, previous) -> {
+            if (previous != null && previous.built) {
+                previous.set(function.apply(previous.value, value));
+                return previous;
+            }
+            created.set(value);
+            return created;
+        });
+        if (node == created) {
+            added(created);
+        } else {
+            node.touch();
+        }
+    }
+
+    void clear() {
+        synchronized (this.queue) {
+            this.nodes.clear();
+            this.queue.clear();
+        }
+    }
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    // makes room before queueing the new entry, which is referenced by its first hit only
+    private void added(Node<K, V> node) {
+        if (this.nodes.size() > this.maxSize) {
+            synchronized (this.queue) {
+                while (this.nodes.size() > this.maxSize) {
+                    Node<K, V> eldest = this.queue.poll();
+                    if (eldest == null) {
+                        break;
+                    }
+                    if (eldest.referenced && this.nodes.get(eldest.key) == eldest) {
+                        eldest.referenced = false;
+                        this.queue.offer(eldest);
+                    } else {
+                        this.nodes.remove(eldest.key, eldest);
+                    }
+                }
+            }
+        }
+        this.queue.offer(node);
+    }
+
+    private static final class Node<K, V> {
+
+        private final K key;
+
+        private volatile V value;
+
+        // values may be null
+        private volatile boolean built;
+
+        private volatile boolean referenced;
+
+        private Node(K key) {
+            this.key = key;
+        }
+
+        private void touch() {
+            // avoids writing the shared flag on every hit
+            if (!this.referenced) {
+                this.referenced = true;
+            }
+        }
+
+        private V get(Function<K, V> generator) {
+            if (!this.built) {
+                synchronized (this) {
+                    if (!this.built) {
+                        set(generator.apply(this.key));
+                    }
+                }
+            }
+            return this.value;
+        }
+
+        private void set(V value) {
+            this.value = value;
+            this.built = true;
+        }
+    }
+}
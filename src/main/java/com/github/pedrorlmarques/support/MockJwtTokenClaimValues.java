@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import com.nimbusds.jose.util.JSONObjectUtils;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the values of {@link WithMockJwtTokenClaim typed claims}.
+ * <p>
+ * Values are parsed with the JSON parser of the Nimbus decoders, so numbers, objects and arrays have the same types
+ * as the claims of a decoded token, and made immutable. Parsed values are cached and shared across annotations, the
+ * cache being bounded like the one of {@link WithMockJwtTokenSecurityContextFactory}.
+ */
+public final class MockJwtTokenClaimValues {
+
+    private static final String VALUE = "value";
+
+    private static final MockJwtTokenCache<String, Object> values = new MockJwtTokenCache<>(
+            Integer.getInteger(WithMockJwtTokenSecurityContextFactory.CACHE_SIZE_PROPERTY,
+                    WithMockJwtTokenSecurityContextFactory.DEFAULT_CACHE_SIZE),
+            MockJwtTokenClaimValues::parseJson);
+
+    private MockJwtTokenClaimValues() {
+    }
+
+    /**
+     * Parses the given claim value.
+     *
+     * @param type  the type, {@code null} meaning {@link WithMockJwtTokenClaim.Type#STRING}
+     * @param value the value
+     * @return the parsed value, immutable
+     * @throws IllegalArgumentException if the value does not match the type
+     */
+    public static Object parse(WithMockJwtTokenClaim.Type type, String value) {
+        if (type == null || type == WithMockJwtTokenClaim.Type.STRING) {
+            return value;
+        }
+
+        Object parsed = values.get(value.trim());
+        if (type == WithMockJwtTokenClaim.Type.NUMBER && !(parsed instanceof Number)) {
+            throw new IllegalArgumentException("Expected a JSON number Got " + value);
+        }
+        if (type == WithMockJwtTokenClaim.Type.BOOLEAN && !(parsed instanceof Boolean)) {
+            throw new IllegalArgumentException("Expected a JSON boolean Got " + value);
+        }
+        return parsed;
+    }
+
+    private static Object parseJson(String json) {
+        Map<String, Object> wrapper;
+        try {
+            wrapper = JSONObjectUtils.parse("{\"" + VALUE + "\":" + json + "}");
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Expected a JSON value Got " + json, ex);
+        }
+        if (wrapper.size() != 1 || !wrapper.containsKey(VALUE)) {
+            throw new IllegalArgumentException("Expected a JSON value Got " + json);
+        }
+        return immutable(wrapper.get(VALUE));
+    }
+
+    static Object immutable(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put((String) entry.getKey(), immutable(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                list.add(immutable(element));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+}
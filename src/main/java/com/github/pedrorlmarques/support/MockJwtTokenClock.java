@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * The {@link Clock} {@link WithMockJwtToken#expiresIn() relative} expirations are computed from, shared with the
+ * {@link #jwtTimestampValidator() timestamp validator} of the test decoders so that tests can move time instead of
+ * sleeping.
+ * <p>
+ * It follows the system clock until it is {@link #setInstant(Instant) set} or {@link #advance(Duration) advanced}, until
+ * {@link #reset()}. The moved time is scoped to the thread that moved it, and to the threads it starts afterwards, so
+ * that tests running concurrently do not see each other's time. Tokens validated on other threads, e.g. by a server
+ * started beforehand, are validated against the system clock.
+ * <pre>
+ * &#064;WithMockJwtToken(subject = "pedro", expiresIn = "PT5M")
+ * void expiredTokenIsRejected() {
+ *     MockJwtTokenClock.get().advance(Duration.ofMinutes(6));
+ *     ...
+ * }
+ * </pre>
+ */
+public final class MockJwtTokenClock extends Clock {
+
+    private static final MockJwtTokenClock instance = new MockJwtTokenClock(ZoneOffset.UTC);
+
+    // null while following the system clock
+    private static final ThreadLocal<Instant> fixed = new InheritableThreadLocal<>();
+
+    private final ZoneId zone;
+
+    private MockJwtTokenClock(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public static MockJwtTokenClock get() {
+        return instance;
+    }
+
+    /**
+     * A {@link JwtTimestampValidator}, with the default clock skew of 60 seconds, using this clock.
+     *
+     * @return the validator
+     */
+    public static JwtTimestampValidator jwtTimestampValidator() {
+        return jwtTimestampValidator(Duration.ofSeconds(60));
+    }
+
+    /**
+     * A {@link JwtTimestampValidator} using this clock.
+     *
+     * @param clockSkew the clock skew
+     * @return the validator
+     */
+    public static JwtTimestampValidator jwtTimestampValidator(Duration clockSkew) {
+        JwtTimestampValidator jwtTimestampValidator = new JwtTimestampValidator(clockSkew);
+        jwtTimestampValidator.setClock(instance);
+        return jwtTimestampValidator;
+    }
+
+    /**
+     * Stops the clock at the given instant, for the current thread.
+     *
+     * @param instant the instant
+     */
+    public void setInstant(Instant instant) {
+        Assert.notNull(instant, "instant cannot be null");
+        fixed.set(instant);
+    }
+
+    /**
+     * Moves the clock forward for the current thread, stopping it if it was following the system clock.
+     *
+     * @param duration the duration, may be negative
+     */
+    public void advance(Duration duration) {
+        Assert.notNull(duration, "duration cannot be null");
+        fixed.set(instant().plus(duration));
+    }
+
+    /**
+     * Follows the system clock again on the current thread.
+     */
+    public void reset() {
+        fixed.remove();
+    }
+
+    /**
+     * Whether the clock was set or advanced on the current thread, rather than following the system clock.
+     *
+     * @return true if it is moved
+     */
+    public boolean isMoved() {
+        return fixed.get() != null;
+    }
+
+    @Override
+    public Instant instant() {
+        Instant instant = fixed.get();
+        return instant != null ? instant : Instant.now();
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return this.zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new MockJwtTokenClock(zone);
+    }
+}
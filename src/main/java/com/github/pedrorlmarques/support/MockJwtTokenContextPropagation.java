@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.NameMatchMethodPointcutAdvisor;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.concurrent.DelegatingSecurityContextScheduledExecutorService;
+import org.springframework.security.task.DelegatingSecurityContextAsyncTaskExecutor;
+import org.springframework.security.task.DelegatingSecurityContextSchedulingTaskExecutor;
+import org.springframework.security.task.DelegatingSecurityContextTaskExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Propagates the {@link WithMockJwtToken} identity to asynchronous work.
+ * <p>
+ * Unlike {@link org.springframework.security.core.context.SecurityContextHolder#MODE_INHERITABLETHREADLOCAL}, which
+ * copies the context when a thread is created, the context is captured when each task is submitted and set on the
+ * thread running it for the duration of the task only, the previous context being restored afterwards. Pooled threads
+ * therefore never run with a stale identity, and any {@link Executor} can be wrapped, including the thread per task
+ * ones, a {@link TaskExecutor} keeping its Spring type.
+ *
+ * @see AutoConfigureMockJwtTokenContextPropagation
+ */
+public final class MockJwtTokenContextPropagation {
+
+    private static final TaskDecorator taskDecorator = new PropagatingTaskDecorator(null);
+
+    private static final String[] SUBMIT_METHODS = {"execute", "submit", "submitListenable"};
+
+    // set on the submitting thread while a propagating proxy hands a captured task to its executor
+    private static final ThreadLocal<Boolean> captured = new ThreadLocal<>();
+
+    private MockJwtTokenContextPropagation() {
+    }
+
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof TaskExecutor) {
+            return wrap((TaskExecutor) executor);
+        }
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        return executor instanceof DelegatingSecurityContextExecutor ? executor
+                : new DelegatingSecurityContextExecutor(executor);
+    }
+
+    public static TaskExecutor wrap(TaskExecutor taskExecutor) {
+        if (taskExecutor instanceof DelegatingSecurityContextTaskExecutor) {
+            return taskExecutor;
+        }
+        if (taskExecutor instanceof SchedulingTaskExecutor) {
+            return new DelegatingSecurityContextSchedulingTaskExecutor((SchedulingTaskExecutor) taskExecutor);
+        }
+        if (taskExecutor instanceof AsyncTaskExecutor) {
+            return new DelegatingSecurityContextAsyncTaskExecutor((AsyncTaskExecutor) taskExecutor);
+        }
+        return new DelegatingSecurityContextTaskExecutor(taskExecutor);
+    }
+
+    public static ExecutorService wrap(ExecutorService executorService) {
+        if (executorService instanceof ScheduledExecutorService) {
+            return wrap((ScheduledExecutorService) executorService);
+        }
+        return executorService instanceof DelegatingSecurityContextExecutorService ? executorService
+                : new DelegatingSecurityContextExecutorService(executorService);
+    }
+
+    public static ScheduledExecutorService wrap(ScheduledExecutorService scheduledExecutorService) {
+        return scheduledExecutorService instanceof DelegatingSecurityContextScheduledExecutorService
+                ? scheduledExecutorService
+                : new DelegatingSecurityContextScheduledExecutorService(scheduledExecutorService);
+    }
+
+    /**
+     * A {@link TaskDecorator} propagating the context, e.g. for a {@code ThreadPoolTaskExecutor}.
+     *
+     * @return the decorator
+     */
+    public static TaskDecorator taskDecorator() {
+        return taskDecorator;
+    }
+
+    /**
+     * Propagates the context after applying the given decorator, unless it already propagates it.
+     *
+     * @param taskDecorator the decorator
+     * @return the composed decorator
+     */
+    public static TaskDecorator taskDecorator(TaskDecorator taskDecorator) {
+        return isPropagating(taskDecorator) ? taskDecorator : new PropagatingTaskDecorator(taskDecorator);
+    }
+
+    static boolean isPropagating(TaskDecorator taskDecorator) {
+        return taskDecorator instanceof PropagatingTaskDecorator;
+    }
+
+    /**
+     * A subclass proxy of the executor capturing the context of each submitted task, before the executor applies its
+     * own decorator.
+     *
+     * @param executor the executor, e.g. a {@code ThreadPoolTaskExecutor}
+     * @param <T>      the type of the executor
+     * @return the proxy
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Executor> T propagating(T executor) {
+        NameMatchMethodPointcutAdvisor advisor = new NameMatchMethodPointcutAdvisor((MethodInterceptor) invocation -> {
+            Object[] arguments = invocation.getArguments();
+            if (arguments.length > 0 && arguments[0] instanceof Runnable
+                    && !(arguments[0] instanceof DelegatingSecurityContextRunnable)) {
+                arguments[0] = DelegatingSecurityContextRunnable.create((Runnable) arguments[0], null);
+            } else if (arguments.length > 0 && arguments[0] instanceof Callable) {
+                arguments[0] = DelegatingSecurityContextCallable.create((Callable<?>) arguments[0], null);
+            }
+            Boolean previous = captured.get();
+            captured.set(Boolean.TRUE);
+            try {
+                return invocation.proceed();
+            } finally {
+                if (previous == null) {
+                    captured.remove();
+                }
+            }
+        });
+        advisor.setMappedNames(SUBMIT_METHODS);
+        ProxyFactory proxyFactory = new ProxyFactory(executor);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(advisor);
+        return (T) proxyFactory.getProxy(executor.getClass().getClassLoader());
+    }
+
+    // tasks already capturing a context, e.g. submitted to a propagating executor, are not captured again
+    private static final class PropagatingTaskDecorator implements TaskDecorator {
+
+        private final TaskDecorator delegate;
+
+        private PropagatingTaskDecorator(TaskDecorator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Runnable decorate(Runnable runnable) {
+            Runnable decorated = this.delegate != null ? this.delegate.decorate(runnable) : runnable;
+            if (captured.get() != null || runnable instanceof DelegatingSecurityContextRunnable
+                    || decorated instanceof DelegatingSecurityContextRunnable) {
+                return decorated;
+            }
+            return DelegatingSecurityContextRunnable.create(decorated, null);
+        }
+    }
+}
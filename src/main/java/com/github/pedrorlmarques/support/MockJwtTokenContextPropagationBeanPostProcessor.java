@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Makes the {@link Executor} and {@link TaskDecorator} beans propagate the test identity, see
+ * {@link MockJwtTokenContextPropagation}.
+ * <p>
+ * {@link ThreadPoolTaskExecutor} and {@link SimpleAsyncTaskExecutor} beans, e.g. the default executor of
+ * {@code @Async} methods in Spring Boot, are replaced by a subclass proxy capturing the context of each submitted
+ * task, their own {@link TaskDecorator} being left as is. Propagating decorators do not capture such tasks again,
+ * and are not wrapped themselves. The other beans are wrapped, unless the wrapper would not be assignable to the type
+ * the bean is declared with, e.g. a {@code ThreadPoolExecutor} {@code @Bean}: such beans are left as is so that they
+ * can still be injected by their type.
+ */
+public class MockJwtTokenContextPropagationBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        if (beanFactory instanceof ConfigurableListableBeanFactory) {
+            this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof ThreadPoolTaskExecutor || bean instanceof SimpleAsyncTaskExecutor) {
+            return MockJwtTokenContextPropagation.propagating((Executor) bean);
+        }
+        if (bean instanceof TaskDecorator) {
+            return MockJwtTokenContextPropagation.isPropagating((TaskDecorator) bean) ? bean
+                    : assignable(beanName, MockJwtTokenContextPropagation.taskDecorator((TaskDecorator) bean), bean);
+        }
+        if (bean instanceof Executor) {
+            return assignable(beanName, MockJwtTokenContextPropagation.wrap((Executor) bean), bean);
+        }
+        return bean;
+    }
+
+    // the wrapper if it can be injected wherever the bean can, the bean otherwise
+    private Object assignable(String beanName, Object wrapper, Object bean) {
+        if (this.beanFactory == null || !this.beanFactory.containsBeanDefinition(beanName)) {
+            return bean;
+        }
+        Class<?> declaredType = this.beanFactory.getMergedBeanDefinition(beanName).getResolvableType().resolve();
+        return declaredType != null && declaredType.isInstance(wrapper) ? wrapper : bean;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link JwtDecoder} recognizing the tokens minted by {@link WithMockJwtTokenSecurityContextFactory}: the
+ * {@link Jwt} built for the annotation is returned as is, without any base64, JSON or signature work.
+ * <p>
+ * Unknown tokens, unsigned ones shared by several identities that are not the current one, and the ones signed with
+ * a key no longer in the {@link MockJwtTokenKeys#jwkSet() JWK set}, are handed to the fallback decoder when there is
+ * one. The {@link Jwt} is still validated, with
+ * {@link MockJwtTokenClock#jwtTimestampValidator()} unless {@link #setJwtValidator(OAuth2TokenValidator) configured}.
+ *
+ * @see MockJwtTokenDecoderConfiguration
+ */
+public class MockJwtTokenDecoder implements JwtDecoder {
+
+    private final JwtDecoder fallback;
+
+    private OAuth2TokenValidator<Jwt> jwtValidator = MockJwtTokenClock.jwtTimestampValidator();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public MockJwtTokenDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param fallback the decoder of the tokens not minted by the factory, e.g. {@link MockJwtTokenKeys#jwtDecoder()}
+     */
+    public MockJwtTokenDecoder(JwtDecoder fallback) {
+        this.fallback = fallback;
+    }
+
+    public void setJwtValidator(OAuth2TokenValidator<Jwt> jwtValidator) {
+        Assert.notNull(jwtValidator, "jwtValidator cannot be null");
+        this.jwtValidator = jwtValidator;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Jwt jwt = MockJwtTokenRegistry.find(token);
+        if (jwt == null) {
+            jwt = currentJwt(token);
+        }
+        if (jwt != null) {
+            this.hitCount.increment();
+            return validate(jwt);
+        }
+
+        this.missCount.increment();
+        if (this.fallback != null) {
+            return this.fallback.decode(token);
+        }
+        if (MockJwtTokenRegistry.isAmbiguous(token)) {
+            throw new BadJwtException("The token is shared by several @WithMockJwtToken identities, "
+                    + "set a distinct token or a signatureAlgorithm");
+        }
+        if (MockJwtTokenRegistry.isRetired(token)) {
+            throw new BadJwtException("The token is signed with a key retired by MockJwtTokenKeys.rotate()");
+        }
+        throw new BadJwtException("The token was not minted by @WithMockJwtToken");
+    }
+
+    /**
+     * The number of tokens returned from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * The number of tokens not minted by the factory, handed to the fallback decoder if any.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    public void resetCounters() {
+        this.hitCount.reset();
+        this.missCount.reset();
+    }
+
+    // the identity of the running test, also resolves the tokens shared by several identities
+    private static Jwt currentJwt(String token) {
+        Authentication authentication = TestSecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof JwtAuthenticationToken) {
+            Jwt jwt = ((JwtAuthenticationToken) authentication).getToken();
+            if (jwt.getTokenValue().equals(token) && MockJwtTokenKeys.isVerifiable(jwt)) {
+                return jwt;
+            }
+        }
+        return null;
+    }
+
+    private Jwt validate(Jwt jwt) {
+        OAuth2TokenValidatorResult result = this.jwtValidator.validate(jwt);
+        if (result.hasErrors()) {
+            throw new JwtValidationException("Unable to validate Jwt " + result.getErrors(), result.getErrors());
+        }
+        return jwt;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Registers a primary {@link MockJwtTokenDecoder}, falling back to {@link MockJwtTokenKeys#jwtDecoder()} for the
+ * signed tokens not minted by the factory (e.g. by the token generator).
+ *
+ * @see AutoConfigureMockJwtTokenDecoder
+ */
+@Configuration(proxyBeanMethods = false)
+public class MockJwtTokenDecoderConfiguration {
+
+    @Bean
+    @Primary
+    public MockJwtTokenDecoder mockJwtTokenDecoder() {
+        return new MockJwtTokenDecoder(MockJwtTokenKeys.jwtDecoder());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claim sets of the {@link WithMockJwtToken#fixture() fixtures}, read from the {@value #LOCATION}{@code <name>.json}
+ * classpath resources.
+ * <p>
+ * A fixture is only read the first time it is referenced, files being memory-mapped when not packaged in a jar, and
+ * its claims are kept, immutable, for the life of the JVM. The classpath is never scanned, so the number of fixtures
+ * does not matter.
+ */
+public final class MockJwtTokenFixtureFiles {
+
+    public static final String LOCATION = "META-INF/with-mock-jwt-token/";
+
+    private static final Map<String, Map<String, Object>> fixtures = new ConcurrentHashMap<>();
+
+    private MockJwtTokenFixtureFiles() {
+    }
+
+    /**
+     * Returns the claims of the given fixture.
+     *
+     * @param name the fixture name
+     * @return the claims, immutable
+     * @throws IllegalArgumentException if there is no such fixture or it is not a JSON object
+     */
+    public static Map<String, Object> claims(String name) {
+        return fixtures.computeIfAbsent(name, MockJwtTokenFixtureFiles::load);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> load(String name) {
+        String location = LOCATION + name + ".json";
+        URL resource = ClassUtils.getDefaultClassLoader().getResource(location);
+        if (resource == null) {
+            throw new IllegalArgumentException("No fixture " + name + " found at classpath:" + location);
+        }
+
+        try {
+            return (Map<String, Object>) MockJwtTokenClaimValues.immutable(JSONObjectUtils.parse(read(resource)));
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Fixture " + name + " is not a JSON object: " + ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read fixture " + name + " from " + resource, ex);
+        }
+    }
+
+    private static String read(URL resource) throws IOException {
+        if ("file".equals(resource.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(resource.toURI()))) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return StandardCharsets.UTF_8.decode(buffer).toString();
+            } catch (URISyntaxException ex) {
+                throw new IOException("Invalid fixture location " + resource, ex);
+            }
+        }
+        try (InputStream inputStream = resource.openStream()) {
+            return StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.security.oauth2.jwt.JoseHeaderNames;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The keys used to sign {@link WithMockJwtToken#signatureAlgorithm() signed} tokens.
+ * <p>
+ * One key per algorithm is generated the first time it is needed and kept for the life of the JVM. When the
+ * {@value #KEYS_PROPERTY} system property points to a JWK set file, keys are loaded from it, and the generated
+ * ones are written back to it, so they survive between runs.
+ * <p>
+ * {@link #rotate()} replaces the signing keys, the previous ones staying in the {@link #jwkSet()} until the next
+ * rotation so tokens signed before it can still be verified. The caches of minted tokens check
+ * {@link #isCurrent(Jwt)} when they hand one out, so that identities are signed again with the new keys.
+ */
+public final class MockJwtTokenKeys {
+
+    public static final String KEYS_PROPERTY = "withMockJwtToken.keys";
+
+    public static final Set<JWSAlgorithm> SUPPORTED_ALGORITHMS = new LinkedHashSet<>(Arrays.asList(
+            JWSAlgorithm.RS256, JWSAlgorithm.RS384, JWSAlgorithm.RS512,
+            JWSAlgorithm.ES256, JWSAlgorithm.ES384, JWSAlgorithm.ES512,
+            JWSAlgorithm.HS256, JWSAlgorithm.HS384, JWSAlgorithm.HS512));
+
+    private static final Map<JWSAlgorithm, JWK> keys = new ConcurrentHashMap<>();
+
+    private static volatile List<JWK> previousKeys = Collections.emptyList();
+
+    // the key ids of the signing keys and of all the keys of the jwk set, updated with them
+    private static volatile Set<String> signingKeyIds = Collections.emptySet();
+
+    private static volatile Set<String> verificationKeyIds = Collections.emptySet();
+
+    private static volatile int version;
+
+    private static boolean loaded;
+
+    private MockJwtTokenKeys() {
+    }
+
+    /**
+     * Returns the key signing tokens with the given algorithm.
+     *
+     * @param algorithm the algorithm
+     * @return the key, including its private part
+     */
+    public static JWK signingKey(JWSAlgorithm algorithm) {
+        JWK key = keys.get(algorithm);
+        if (key != null) {
+            return key;
+        }
+        synchronized (MockJwtTokenKeys.class) {
+            load();
+            key = keys.get(algorithm);
+            if (key == null) {
+                key = generate(algorithm);
+                keys.put(algorithm, key);
+                version++;
+                updateKeyIds();
+                save();
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Parses a {@link WithMockJwtToken#signatureAlgorithm()}.
+     *
+     * @param algorithm the algorithm name
+     * @return the algorithm
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public static JWSAlgorithm algorithm(String algorithm) {
+        JWSAlgorithm jwsAlgorithm = JWSAlgorithm.parse(algorithm);
+        if (!SUPPORTED_ALGORITHMS.contains(jwsAlgorithm)) {
+            throw new IllegalArgumentException("Unsupported signature algorithm " + algorithm + ", expected one of "
+                    + SUPPORTED_ALGORITHMS);
+        }
+        return jwsAlgorithm;
+    }
+
+    /**
+     * Replaces the signing key of every algorithm used so far. Cached identities signed with the previous keys are
+     * signed again with the new ones the next time they are used.
+     */
+    public static void rotate() {
+        synchronized (MockJwtTokenKeys.class) {
+            List<JWK> retired = new ArrayList<>(keys.values());
+            for (JWK key : retired) {
+                JWSAlgorithm algorithm = JWSAlgorithm.parse(key.getAlgorithm().getName());
+                keys.put(algorithm, generate(algorithm));
+            }
+            previousKeys = Collections.unmodifiableList(retired);
+            version++;
+            updateKeyIds();
+            save();
+        }
+    }
+
+    /**
+     * Whether the given token is unsigned or signed with one of the current signing keys, rather than with a key
+     * retired by a {@link #rotate() rotation}.
+     *
+     * @param jwt the token
+     * @return true if it does not need to be signed again
+     */
+    static boolean isCurrent(Jwt jwt) {
+        Object keyId = jwt.getHeaders().get(JoseHeaderNames.KID);
+        return keyId == null || signingKeyIds.contains(keyId);
+    }
+
+    /**
+     * Whether the given token is unsigned or signed with one of the keys of the {@link #jwkSet()}, i.e. can still be
+     * verified.
+     *
+     * @param jwt the token
+     * @return true if it can be verified
+     */
+    static boolean isVerifiable(Jwt jwt) {
+        Object keyId = jwt.getHeaders().get(JoseHeaderNames.KID);
+        return keyId == null || verificationKeyIds.contains(keyId);
+    }
+
+    /**
+     * All the keys generated or loaded so far, including their private and secret parts and the keys retired by the
+     * last {@link #rotate() rotation}.
+     *
+     * @return the keys
+     */
+    public static JWKSet jwkSet() {
+        List<JWK> jwks = new ArrayList<>(keys.values());
+        jwks.addAll(previousKeys);
+        return new JWKSet(jwks);
+    }
+
+    /**
+     * A number changing every time a key is added or rotated.
+     *
+     * @return the version of the {@link #jwkSet()}
+     */
+    public static int version() {
+        return version;
+    }
+
+    /**
+     * A {@link JwtDecoder} verifying the signature of the tokens signed with any of these keys, timestamps being
+     * validated against the {@link MockJwtTokenClock}.
+     *
+     * @return the decoder
+     */
+    public static JwtDecoder jwtDecoder() {
+        DefaultJWTProcessor<com.nimbusds.jose.proc.SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(SUPPORTED_ALGORITHMS,
+                (jwkSelector, context) -> jwkSelector.select(jwkSet())));
+        // Spring Security validates the claims
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        NimbusJwtDecoder jwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+        jwtDecoder.setJwtValidator(MockJwtTokenClock.jwtTimestampValidator());
+        return jwtDecoder;
+    }
+
+    private static JWK generate(JWSAlgorithm algorithm) {
+        String keyId = algorithm.getName().toLowerCase() + "-" + UUID.randomUUID();
+        try {
+            if (JWSAlgorithm.Family.RSA.contains(algorithm)) {
+                return new RSAKeyGenerator(2048).keyUse(KeyUse.SIGNATURE).algorithm(algorithm).keyID(keyId).generate();
+            }
+            if (JWSAlgorithm.Family.EC.contains(algorithm)) {
+                return new ECKeyGenerator(Curve.forJWSAlgorithm(algorithm).iterator().next())
+                        .keyUse(KeyUse.SIGNATURE).algorithm(algorithm).keyID(keyId).generate();
+            }
+            int size = Integer.parseInt(algorithm.getName().substring(2));
+            return new OctetSequenceKeyGenerator(size).keyUse(KeyUse.SIGNATURE).algorithm(algorithm).keyID(keyId).generate();
+        } catch (JOSEException ex) {
+            throw new IllegalStateException("Unable to generate a " + algorithm + " key", ex);
+        }
+    }
+
+    private static void load() {
+        Path path = keysPath();
+        if (loaded || path == null || !Files.exists(path)) {
+            loaded = true;
+            return;
+        }
+        try {
+            for (JWK key : JWKSet.load(path.toFile()).getKeys()) {
+                if (key.getAlgorithm() != null && key.isPrivate()) {
+                    keys.putIfAbsent(JWSAlgorithm.parse(key.getAlgorithm().getName()), key);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read the keys from " + path, ex);
+        } catch (ParseException ex) {
+            throw new IllegalStateException("Unable to parse the keys from " + path, ex);
+        }
+        loaded = true;
+        version++;
+        updateKeyIds();
+    }
+
+    private static void updateKeyIds() {
+        Set<String> signing = new HashSet<>();
+        for (JWK key : keys.values()) {
+            signing.add(key.getKeyID());
+        }
+        Set<String> verification = new HashSet<>(signing);
+        for (JWK key : previousKeys) {
+            verification.add(key.getKeyID());
+        }
+        signingKeyIds = Collections.unmodifiableSet(signing);
+        verificationKeyIds = Collections.unmodifiableSet(verification);
+    }
+
+    private static void save() {
+        Path path = keysPath();
+        if (path == null) {
+            return;
+        }
+        try {
+            File parent = path.toAbsolutePath().getParent().toFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+            Files.write(path, jwkSet().toString(false).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write the keys to " + path, ex);
+        }
+    }
+
+    private static Path keysPath() {
+        String path = System.getProperty(KEYS_PROPERTY);
+        return path == null || path.isEmpty() ? null : Paths.get(path);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.core.Authentication;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures the identity set ups and hands them to the {@link MockJwtTokenMetricsRecorder}s.
+ * <p>
+ * When there is no recorder nothing is measured. The test class is tracked by the
+ * {@link MockJwtTokenMetricsTestExecutionListener} for the thread running the test, set ups running elsewhere give
+ * it explicitly.
+ */
+final class MockJwtTokenMetrics {
+
+    static final String REPORT_PROPERTY = "withMockJwtToken.metrics.report";
+
+    private static final List<MockJwtTokenMetricsRecorder> recorders = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<String> testClass = new ThreadLocal<>();
+
+    private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+
+    static {
+        ServiceLoader.load(MockJwtTokenMetricsRecorder.class, MockJwtTokenMetrics.class.getClassLoader())
+                .forEach(recorders::add);
+        String report = System.getProperty(REPORT_PROPERTY);
+        if (report != null && !report.isEmpty()) {
+            recorders.add(MockJwtTokenMetricsReport.writtenAtShutdown(Paths.get(report)));
+        }
+    }
+
+    private MockJwtTokenMetrics() {
+    }
+
+    static void addRecorder(MockJwtTokenMetricsRecorder recorder) {
+        recorders.add(recorder);
+    }
+
+    static void removeRecorder(MockJwtTokenMetricsRecorder recorder) {
+        recorders.remove(recorder);
+    }
+
+    static void setTestClass(Class<?> testClass) {
+        MockJwtTokenMetrics.testClass.set(testClass.getName());
+    }
+
+    static void clearTestClass() {
+        testClass.remove();
+    }
+
+    /**
+     * Starts measuring a set up on the current thread.
+     *
+     * @param cacheHit whether the authentication is already built, only called when measuring
+     * @return the sample, null when there is no recorder
+     */
+    static Sample start(BooleanSupplier cacheHit) {
+        return start(testClass.get(), cacheHit);
+    }
+
+    /**
+     * Starts measuring a set up of the given test class on the current thread, which does not need to run the test.
+     *
+     * @param testClass the test class
+     * @param cacheHit  whether the authentication is already built, only called when measuring
+     * @return the sample, null when there is no recorder
+     */
+    static Sample start(Class<?> testClass, BooleanSupplier cacheHit) {
+        return start(testClass.getName(), cacheHit);
+    }
+
+    private static Sample start(String testClass, BooleanSupplier cacheHit) {
+        if (recorders.isEmpty()) {
+            return null;
+        }
+        return new Sample(testClass != null ? testClass : MockJwtTokenSetup.UNKNOWN_TEST_CLASS,
+                cacheHit.getAsBoolean(), allocatedBytes(), System.nanoTime());
+    }
+
+    private static long allocatedBytes() {
+        return allocationBean != null ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled()) {
+                return (com.sun.management.ThreadMXBean) threadMXBean;
+            }
+        } catch (LinkageError ex) {
+            // not a HotSpot based JVM
+        }
+        return null;
+    }
+
+    static final class Sample {
+
+        private final String testClass;
+
+        private final boolean cacheHit;
+
+        private final long allocatedBytes;
+
+        private final long startNanos;
+
+        private Sample(String testClass, boolean cacheHit, long allocatedBytes, long startNanos) {
+            this.testClass = testClass;
+            this.cacheHit = cacheHit;
+            this.allocatedBytes = allocatedBytes;
+            this.startNanos = startNanos;
+        }
+
+        void stop(Authentication authentication) {
+            long durationNanos = System.nanoTime() - this.startNanos;
+            long allocated = this.allocatedBytes < 0 ? -1 : allocatedBytes() - this.allocatedBytes;
+            MockJwtTokenSetup setup = new MockJwtTokenSetup(this.testClass, authentication.getName(), durationNanos,
+                    allocated, this.cacheHit);
+            for (MockJwtTokenMetricsRecorder recorder : recorders) {
+                recorder.record(setup);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+/**
+ * Receives the cost of each identity set up by {@link WithMockJwtTokenSecurityContextFactory}.
+ * <p>
+ * Implementations are looked up with the {@link java.util.ServiceLoader}, list them in a
+ * {@code META-INF/services/com.github.pedrorlmarques.support.MockJwtTokenMetricsRecorder} file of the test classpath.
+ * They are called on the thread setting up the identity, possibly from several threads at once.
+ *
+ * @see MicrometerMockJwtTokenMetricsRecorder
+ */
+public interface MockJwtTokenMetricsRecorder {
+
+    void record(MockJwtTokenSetup setup);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the set ups per test class and identity, and writes them as a tab separated report, the slowest first.
+ * <p>
+ * Installed by {@link MockJwtTokenMetrics} when the {@value MockJwtTokenMetrics#REPORT_PROPERTY} system property
+ * names the report file, which is written when the JVM shuts down.
+ */
+class MockJwtTokenMetricsReport implements MockJwtTokenMetricsRecorder {
+
+    static final String HEADER = "test class\tidentity\tcalls\tcache hits\tcache misses\ttotal ms\tmax ms\tallocated bytes";
+
+    private final Map<Key, Statistics> statistics = new ConcurrentHashMap<>();
+
+    static MockJwtTokenMetricsReport writtenAtShutdown(Path report) {
+        MockJwtTokenMetricsReport metricsReport = new MockJwtTokenMetricsReport();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> metricsReport.write(report),
+                "with-mock-jwt-token-metrics-report"));
+        return metricsReport;
+    }
+
+    @Override
+    public void record(MockJwtTokenSetup setup) {
+        this.statistics.computeIfAbsent(new Key(setup.getTestClass(), setup.getIdentity()), key -> new Statistics())
+                .add(setup);
+    }
+
+    void write(Path report) {
+        List<Map.Entry<Key, Statistics>> entries = new ArrayList<>(this.statistics.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<Key, Statistics> entry) -> entry.getValue().totalNanos.sum())
+                .reversed());
+
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(HEADER);
+        for (Map.Entry<Key, Statistics> entry : entries) {
+            Statistics statistics = entry.getValue();
+            lines.add(String.join("\t", entry.getKey().testClass, entry.getKey().identity,
+                    Long.toString(statistics.hits.sum() + statistics.misses.sum()),
+                    Long.toString(statistics.hits.sum()), Long.toString(statistics.misses.sum()),
+                    millis(statistics.totalNanos.sum()), millis(statistics.maxNanos.get()),
+                    Long.toString(statistics.allocatedBytes.sum())));
+        }
+
+        try {
+            Path parent = report.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(report, lines, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write the metrics report " + report, ex);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000d);
+    }
+
+    private static final class Key {
+
+        private final String testClass;
+
+        private final String identity;
+
+        private Key(String testClass, String identity) {
+            this.testClass = testClass;
+            this.identity = identity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return this.testClass.equals(key.testClass) && Objects.equals(this.identity, key.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.testClass, this.identity);
+        }
+    }
+
+    private static final class Statistics {
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        private void add(MockJwtTokenSetup setup) {
+            (setup.isCacheHit() ? this.hits : this.misses).increment();
+            this.totalNanos.add(setup.getDurationNanos());
+            this.maxNanos.accumulate(setup.getDurationNanos());
+            if (setup.getAllocatedBytes() > 0) {
+                this.allocatedBytes.add(setup.getAllocatedBytes());
+            }
+        }
+    }
+}
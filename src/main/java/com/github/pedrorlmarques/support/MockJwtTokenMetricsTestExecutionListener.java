@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+/**
+ * Tags the identities set up while a test class runs with that class, see {@link MockJwtTokenMetricsRecorder}.
+ */
+public class MockJwtTokenMetricsTestExecutionListener extends AbstractTestExecutionListener {
+
+    /**
+     * Runs before the {@link WithClassScopedMockJwtTokenTestExecutionListener} (9999).
+     *
+     * @return 9000
+     */
+    @Override
+    public int getOrder() {
+        return 9000;
+    }
+
+    @Override
+    public void beforeTestClass(TestContext testContext) {
+        MockJwtTokenMetrics.setTestClass(testContext.getTestClass());
+    }
+
+    // the methods of a class may run on other threads than its class callbacks
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        MockJwtTokenMetrics.setTestClass(testContext.getTestClass());
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) {
+        MockJwtTokenMetrics.clearTestClass();
+    }
+
+    @Override
+    public void afterTestClass(TestContext testContext) {
+        MockJwtTokenMetrics.clearTestClass();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Bounded index of the tokens minted by {@link WithMockJwtTokenSecurityContextFactory}, the least recently used ones
+ * being evicted first.
+ * <p>
+ * Unsigned tokens all share the same {@link com.github.pedrorlmarques.annotation.WithMockJwtToken#token() value} by
+ * default, such a value registered for different identities is ambiguous and {@link #find(String)} no longer returns
+ * it.
+ */
+final class MockJwtTokenRegistry {
+
+    private static final Jwt AMBIGUOUS = Jwt.withTokenValue("ambiguous").header("alg", "none").claim("sub", "").build();
+
+    private static final MockJwtTokenCache<String, Jwt> tokens = new MockJwtTokenCache<>(
+            Integer.getInteger(WithMockJwtTokenSecurityContextFactory.CACHE_SIZE_PROPERTY,
+                    WithMockJwtTokenSecurityContextFactory.DEFAULT_CACHE_SIZE));
+
+    private MockJwtTokenRegistry() {
+    }
+
+    static void register(Jwt jwt) {
+        tokens.merge(jwt.getTokenValue(), jwt, (previous, current) -> previous.equals(current)
+                && previous.getClaims().equals(current.getClaims()) ? current : AMBIGUOUS);
+    }
+
+    /**
+     * Returns the {@link Jwt} minted with the given value.
+     *
+     * @param token the token value
+     * @return the {@link Jwt}, {@code null} if unknown, ambiguous or signed with a key no longer in the JWK set
+     */
+    static Jwt find(String token) {
+        Jwt jwt = tokens.find(token);
+        return jwt == AMBIGUOUS || jwt == null || !MockJwtTokenKeys.isVerifiable(jwt) ? null : jwt;
+    }
+
+    static boolean isAmbiguous(String token) {
+        return tokens.find(token) == AMBIGUOUS;
+    }
+
+    static boolean isRetired(String token) {
+        Jwt jwt = tokens.find(token);
+        return jwt != null && jwt != AMBIGUOUS && !MockJwtTokenKeys.isVerifiable(jwt);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+/**
+ * The cost of setting up one identity, see {@link MockJwtTokenMetricsRecorder}.
+ */
+public final class MockJwtTokenSetup {
+
+    static final String UNKNOWN_TEST_CLASS = "unknown";
+
+    private final String testClass;
+
+    private final String identity;
+
+    private final long durationNanos;
+
+    private final long allocatedBytes;
+
+    private final boolean cacheHit;
+
+    MockJwtTokenSetup(String testClass, String identity, long durationNanos, long allocatedBytes, boolean cacheHit) {
+        this.testClass = testClass;
+        this.identity = identity;
+        this.durationNanos = durationNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.cacheHit = cacheHit;
+    }
+
+    /**
+     * The name of the test class the identity was set up for, {@value #UNKNOWN_TEST_CLASS} outside of a Spring test.
+     *
+     * @return the test class name
+     */
+    public String getTestClass() {
+        return this.testClass;
+    }
+
+    /**
+     * The name of the authentication, i.e. the subject of the token.
+     *
+     * @return the identity
+     */
+    public String getIdentity() {
+        return this.identity;
+    }
+
+    public long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+    /**
+     * The bytes allocated by the set up thread, -1 when the JVM does not measure them.
+     *
+     * @return the allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Whether the authentication was already built.
+     *
+     * @return true on a cache hit
+     */
+    public boolean isCacheHit() {
+        return this.cacheHit;
+    }
+
+    @Override
+    public String toString() {
+        return "MockJwtTokenSetup{testClass=" + this.testClass + ", identity=" + this.identity + ", durationNanos="
+                + this.durationNanos + ", allocatedBytes=" + this.allocatedBytes + ", cacheHit=" + this.cacheHit + "}";
+    }
+}
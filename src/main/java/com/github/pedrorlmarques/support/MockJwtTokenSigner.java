@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signs claim sets with the {@link MockJwtTokenKeys}, producing compact JWTs any {@code JwtDecoder} trusting those
+ * keys can validate.
+ */
+public final class MockJwtTokenSigner {
+
+    // the signer of the current key of each algorithm, replaced on rotation
+    private static final Map<JWSAlgorithm, KeySigner> signers = new ConcurrentHashMap<>();
+
+    private MockJwtTokenSigner() {
+    }
+
+    /**
+     * Signs the given claims.
+     *
+     * @param algorithm the signature algorithm
+     * @param claims    the claims, {@link Instant} values are written as seconds since the epoch
+     * @return the signed token
+     */
+    public static SignedJWT sign(JWSAlgorithm algorithm, Map<String, Object> claims) {
+        JWK key = MockJwtTokenKeys.signingKey(algorithm);
+        JWSHeader header = new JWSHeader.Builder(algorithm)
+                .type(JOSEObjectType.JWT)
+                .keyID(key.getKeyID())
+                .build();
+
+        JWTClaimsSet.Builder claimsSet = new JWTClaimsSet.Builder();
+        for (Map.Entry<String, Object> claim : claims.entrySet()) {
+            claimsSet.claim(claim.getKey(), toJson(claim.getValue()));
+        }
+
+        SignedJWT signedJwt = new SignedJWT(header, claimsSet.build());
+        try {
+            signedJwt.sign(signers.compute(algorithm, (jwsAlgorithm, signer) -> signer != null && signer.key == key
+                    ? signer : new KeySigner(key, signer(algorithm, key))).signer);
+        } catch (JOSEException ex) {
+            throw new IllegalStateException("Unable to sign token with " + algorithm, ex);
+        }
+        return signedJwt;
+    }
+
+    private static JWSSigner signer(JWSAlgorithm algorithm, JWK key) {
+        try {
+            if (JWSAlgorithm.Family.RSA.contains(algorithm)) {
+                return new RSASSASigner(key.toRSAKey());
+            }
+            if (JWSAlgorithm.Family.EC.contains(algorithm)) {
+                return new ECDSASigner(key.toECKey());
+            }
+            return new MACSigner(key.toOctetSequenceKey());
+        } catch (JOSEException ex) {
+            throw new IllegalStateException("Unable to create a " + algorithm + " signer", ex);
+        }
+    }
+
+    private static final class KeySigner {
+
+        private final JWK key;
+
+        private final JWSSigner signer;
+
+        private KeySigner(JWK key, JWSSigner signer) {
+            this.key = key;
+            this.signer = signer;
+        }
+    }
+
+    private static Object toJson(Object value) {
+        if (value instanceof Instant) {
+            return ((Instant) value).getEpochSecond();
+        }
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
+
+/**
+ * Bounded index of the opaque tokens of {@link WithMockOpaqueTokenSecurityContextFactory}, the least recently used
+ * ones being evicted first. A token value set for several identities resolves to the last one set up.
+ */
+final class MockOpaqueTokenRegistry {
+
+    private static final MockJwtTokenCache<String, BearerTokenAuthentication> tokens = new MockJwtTokenCache<>(
+            Integer.getInteger(WithMockJwtTokenSecurityContextFactory.CACHE_SIZE_PROPERTY,
+                    WithMockJwtTokenSecurityContextFactory.DEFAULT_CACHE_SIZE));
+
+    private MockOpaqueTokenRegistry() {
+    }
+
+    static void register(BearerTokenAuthentication authentication) {
+        tokens.put(authentication.getToken().getTokenValue(), authentication);
+    }
+
+    /**
+     * Returns the authentication set up with the given token value.
+     *
+     * @param token the token value
+     * @return the authentication, {@code null} if unknown
+     */
+    static BearerTokenAuthentication find(String token) {
+        return tokens.find(token);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link SecurityContextHolderStrategy} that lets each thread choose between
+ * {@link SecurityContextHolder#MODE_THREADLOCAL} and {@link SecurityContextHolder#MODE_INHERITABLETHREADLOCAL}.
+ * <p>
+ * Installed once, e.g. with {@code -Dspring.security.strategy=com.github.pedrorlmarques.support.ThreadScopedSecurityContextHolderStrategy},
+ * it allows tests running in parallel to request different {@link WithMockJwtToken#securityStrategyName()} without
+ * {@link WithMockJwtTokenSecurityContextFactory} resetting the JVM wide strategy under the other threads.
+ * {@link SecurityContextHolder#MODE_GLOBAL} cannot be scoped to a thread and is therefore not supported.
+ */
+public final class ThreadScopedSecurityContextHolderStrategy implements SecurityContextHolderStrategy {
+
+    private static final InheritableThreadLocal<Boolean> inheritable = new InheritableThreadLocal<Boolean>() {
+
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    private static final InheritableThreadLocal<SecurityContext> contextHolder = new InheritableThreadLocal<SecurityContext>() {
+
+        @Override
+        protected SecurityContext childValue(SecurityContext parentValue) {
+            // invoked on the parent thread while the child thread is being created
+            return inheritable.get() ? parentValue : null;
+        }
+    };
+
+    /**
+     * Sets the mode used by the current thread, and by the threads it creates.
+     *
+     * @param strategyName {@link SecurityContextHolder#MODE_THREADLOCAL} or
+     *                     {@link SecurityContextHolder#MODE_INHERITABLETHREADLOCAL}, empty or the name of this
+     *                     class meaning the former
+     */
+    public void setStrategyName(String strategyName) {
+        if (!StringUtils.hasText(strategyName) || SecurityContextHolder.MODE_THREADLOCAL.equals(strategyName)
+                || ThreadScopedSecurityContextHolderStrategy.class.getName().equals(strategyName)) {
+            inheritable.set(Boolean.FALSE);
+        } else if (SecurityContextHolder.MODE_INHERITABLETHREADLOCAL.equals(strategyName)) {
+            inheritable.set(Boolean.TRUE);
+        } else {
+            throw new IllegalStateException("Security strategy " + strategyName + " cannot be scoped to a thread, only "
+                    + SecurityContextHolder.MODE_THREADLOCAL + " and " + SecurityContextHolder.MODE_INHERITABLETHREADLOCAL
+                    + " are supported by " + ThreadScopedSecurityContextHolderStrategy.class.getSimpleName());
+        }
+    }
+
+    @Override
+    public void clearContext() {
+        contextHolder.remove();
+    }
+
+    @Override
+    public SecurityContext getContext() {
+        SecurityContext context = contextHolder.get();
+        if (context == null) {
+            context = createEmptyContext();
+            contextHolder.set(context);
+        }
+        return context;
+    }
+
+    @Override
+    public void setContext(SecurityContext context) {
+        Assert.notNull(context, "Only non-null SecurityContext instances are permitted");
+        contextHolder.set(context);
+    }
+
+    @Override
+    public SecurityContext createEmptyContext() {
+        return new SecurityContextImpl();
+    }
+}
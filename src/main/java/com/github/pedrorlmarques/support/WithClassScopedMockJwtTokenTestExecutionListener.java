@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithClassScopedMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.security.test.context.support.WithSecurityContextTestExecutionListener;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextAnnotationUtils;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+/**
+ * Sets up the identity of {@link WithClassScopedMockJwtToken}.
+ * <p>
+ * The annotation is resolved and its {@link JwtAuthenticationToken} built once in {@link #beforeTestClass}, before
+ * every test method a new {@link SecurityContext} holding that same authentication is installed in the
+ * {@link TestSecurityContextHolder}, unless its token was signed with a key retired since. It runs just before the
+ * {@link WithSecurityContextTestExecutionListener}, which overrides it for the methods annotated with
+ * {@link WithMockJwtToken}.
+ */
+public class WithClassScopedMockJwtTokenTestExecutionListener extends AbstractTestExecutionListener {
+
+    static final String AUTHENTICATION_ATTRIBUTE = WithClassScopedMockJwtTokenTestExecutionListener.class.getName()
+            + ".AUTHENTICATION";
+
+    static final String IDENTITY_ATTRIBUTE = WithClassScopedMockJwtTokenTestExecutionListener.class.getName()
+            + ".IDENTITY";
+
+    static final String STRATEGY_NAME_ATTRIBUTE = WithClassScopedMockJwtTokenTestExecutionListener.class.getName()
+            + ".STRATEGY_NAME";
+
+    /**
+     * Runs just before the {@link WithSecurityContextTestExecutionListener} (10000).
+     *
+     * @return 9999
+     */
+    @Override
+    public int getOrder() {
+        return 9999;
+    }
+
+    @Override
+    public void beforeTestClass(TestContext testContext) {
+        WithClassScopedMockJwtToken classScoped = TestContextAnnotationUtils.findMergedAnnotation(
+                testContext.getTestClass(), WithClassScopedMockJwtToken.class);
+        if (classScoped == null) {
+            return;
+        }
+
+        WithMockJwtToken withMockJwtToken = classScoped.value();
+        testContext.setAttribute(IDENTITY_ATTRIBUTE, withMockJwtToken);
+        testContext.setAttribute(AUTHENTICATION_ATTRIBUTE, getAuthentication(testContext, withMockJwtToken));
+        testContext.setAttribute(STRATEGY_NAME_ATTRIBUTE, withMockJwtToken.securityStrategyName());
+        // visible from @BeforeAll methods
+        install(testContext);
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        install(testContext);
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) {
+        if (testContext.hasAttribute(AUTHENTICATION_ATTRIBUTE)) {
+            TestSecurityContextHolder.clearContext();
+        }
+    }
+
+    @Override
+    public void afterTestClass(TestContext testContext) {
+        if (testContext.removeAttribute(AUTHENTICATION_ATTRIBUTE) != null) {
+            testContext.removeAttribute(IDENTITY_ATTRIBUTE);
+            testContext.removeAttribute(STRATEGY_NAME_ATTRIBUTE);
+            TestSecurityContextHolder.clearContext();
+        }
+    }
+
+    private static void install(TestContext testContext) {
+        JwtAuthenticationToken authentication = (JwtAuthenticationToken) testContext.getAttribute(AUTHENTICATION_ATTRIBUTE);
+        if (authentication == null) {
+            return;
+        }
+        if (!MockJwtTokenKeys.isCurrent(authentication.getToken())) {
+            authentication = getAuthentication(testContext,
+                    (WithMockJwtToken) testContext.getAttribute(IDENTITY_ATTRIBUTE));
+            testContext.setAttribute(AUTHENTICATION_ATTRIBUTE, authentication);
+        }
+
+        WithMockJwtTokenSecurityContextFactory.applyStrategy((String) testContext.getAttribute(STRATEGY_NAME_ATTRIBUTE));
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(authentication);
+        TestSecurityContextHolder.setContext(context);
+    }
+
+    private static JwtAuthenticationToken getAuthentication(TestContext testContext, WithMockJwtToken withMockJwtToken) {
+        // only converted authorities need the application context, which is not loaded otherwise
+        BeanFactory beanFactory = withMockJwtToken.convertAuthorities()
+                ? testContext.getApplicationContext().getAutowireCapableBeanFactory() : null;
+        MockJwtTokenMetrics.Sample sample = MockJwtTokenMetrics.start(testContext.getTestClass(),
+                () -> WithMockJwtTokenSecurityContextFactory.isCached(withMockJwtToken, beanFactory));
+        JwtAuthenticationToken authentication = WithMockJwtTokenSecurityContextFactory.getAuthentication(
+                withMockJwtToken, beanFactory);
+        if (sample != null) {
+            sample.stop(authentication);
+        }
+        return authentication;
+    }
+}
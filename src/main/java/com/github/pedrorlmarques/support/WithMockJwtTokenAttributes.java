@@ -0,0 +1,567 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenGeneratedClaim;
+import com.github.pedrorlmarques.annotation.WithMockOpaqueToken;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of the attribute values of a {@link WithMockJwtToken}.
+ * <p>
+ * Two snapshots are equal when they describe the same identity, which makes them usable as cache keys.
+ * The granted authorities are resolved (and validated) when the snapshot is taken.
+ */
+public final class WithMockJwtTokenAttributes {
+
+    private final String token;
+
+    private final String signatureAlgorithm;
+
+    private final String subject;
+
+    private final List<String> audience;
+
+    private final String expiresAt;
+
+    private final String expiresIn;
+
+    private final String issuedAt;
+
+    private final String jti;
+
+    private final List<String> scope;
+
+    private final List<String> authorities;
+
+    private final Map<String, Object> claims;
+
+    private final int hashCode;
+
+    private WithMockJwtTokenAttributes(Builder builder) {
+        this.token = builder.token;
+        this.signatureAlgorithm = builder.signatureAlgorithm;
+        this.subject = builder.subject;
+        this.audience = Collections.unmodifiableList(new ArrayList<>(builder.audience));
+        this.expiresAt = builder.expiresAt;
+        this.expiresIn = builder.expiresIn;
+        this.issuedAt = builder.issuedAt;
+        this.jti = builder.jti;
+        this.scope = Collections.unmodifiableList(new ArrayList<>(builder.scope));
+        List<String> authorities = new ArrayList<>(builder.authorities.size() + builder.generatedAuthorities.size());
+        authorities.addAll(builder.authorities);
+        authorities.addAll(builder.generatedAuthorities);
+        this.authorities = Collections.unmodifiableList(authorities);
+        this.claims = Collections.unmodifiableMap(new LinkedHashMap<>(builder.claims));
+        this.hashCode = Objects.hash(this.token, this.signatureAlgorithm, this.subject, this.audience, this.expiresAt,
+                this.expiresIn, this.issuedAt, this.jti, this.scope, this.authorities, this.claims);
+    }
+
+    /**
+     * Takes a snapshot of the given annotation.
+     *
+     * @param withMockJwtToken the annotation
+     * @return the snapshot
+     * @throws IllegalArgumentException if a role starts with "ROLE_", a typed claim value cannot be parsed or no subject
+     *                                  is set by the annotation or its fixture
+     * @throws IllegalStateException    if both roles and authorities are defined
+     */
+    public static WithMockJwtTokenAttributes from(WithMockJwtToken withMockJwtToken) {
+        Builder builder = builder()
+                .token(withMockJwtToken.token())
+                .fixture(withMockJwtToken.fixture())
+                .signatureAlgorithm(withMockJwtToken.signatureAlgorithm())
+                .subject(withMockJwtToken.subject())
+                .audience(withMockJwtToken.audience())
+                .expiresAt(withMockJwtToken.expiresAt())
+                .expiresIn(withMockJwtToken.expiresIn())
+                .issuedAt(withMockJwtToken.issuedAt())
+                .jti(withMockJwtToken.jti())
+                .scope(withMockJwtToken.scope())
+                .authorities(getAuthorities(withMockJwtToken));
+
+        WithMockJwtTokenAttributes attributes = claims(builder, withMockJwtToken.additionalClaims(),
+                withMockJwtToken.generatedClaims()).build();
+        Assert.hasText(attributes.getSubject(), "subject must be set unless a fixture is used");
+        return attributes;
+    }
+
+    /**
+     * Takes a snapshot of the given annotation, an empty token meaning a generated one.
+     *
+     * @param withMockOpaqueToken the annotation
+     * @return the snapshot
+     * @throws IllegalArgumentException if a role starts with "ROLE_" or a typed claim value cannot be parsed
+     * @throws IllegalStateException    if both roles and authorities are defined
+     */
+    public static WithMockJwtTokenAttributes from(WithMockOpaqueToken withMockOpaqueToken) {
+        Builder builder = builder()
+                .token(withMockOpaqueToken.token())
+                .fixture(withMockOpaqueToken.fixture())
+                .subject(withMockOpaqueToken.subject())
+                .audience(withMockOpaqueToken.audience())
+                .expiresAt(withMockOpaqueToken.expiresAt())
+                .expiresIn(withMockOpaqueToken.expiresIn())
+                .issuedAt(withMockOpaqueToken.issuedAt())
+                .jti(withMockOpaqueToken.jti())
+                .scope(withMockOpaqueToken.scope())
+                .authorities(resolveAuthorities(withMockOpaqueToken.roles(), withMockOpaqueToken.authorities()));
+
+        return claims(builder, withMockOpaqueToken.additionalClaims(), withMockOpaqueToken.generatedClaims()).build();
+    }
+
+    private static Builder claims(Builder builder, WithMockJwtTokenClaim[] additionalClaims,
+                                  WithMockJwtTokenGeneratedClaim[] generatedClaims) {
+        for (WithMockJwtTokenClaim withMockJwtTokenClaim : additionalClaims) {
+            builder.claim(withMockJwtTokenClaim.name(),
+                    MockJwtTokenClaimValues.parse(withMockJwtTokenClaim.type(), withMockJwtTokenClaim.value()));
+        }
+        for (int i = 0; generatedClaims != null && i < generatedClaims.length; i++) {
+            builder.generatedClaim(generatedClaims[i].name(), generatedClaims[i].prefix(), generatedClaims[i].count(),
+                    generatedClaims[i].authorities());
+        }
+        return builder;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static List<String> getAuthorities(WithMockJwtToken withMockJwtToken) {
+        String[] authorities = withMockJwtToken.authorities();
+        return resolveAuthorities(withMockJwtToken.roles(), authorities);
+    }
+
+    /**
+     * Resolves the authorities of the {@link WithMockJwtToken#roles()} and {@link WithMockJwtToken#authorities()}
+     * attributes.
+     *
+     * @param roles       the roles
+     * @param authorities the authorities
+     * @return the authorities, roles prefixed with "ROLE_"
+     * @throws IllegalArgumentException if a role starts with "ROLE_"
+     * @throws IllegalStateException    if both roles and authorities are defined
+     */
+    public static List<String> resolveAuthorities(String[] roles, String[] authorities) {
+        if (authorities.length == 0) {
+            List<String> grantedAuthorities = new ArrayList<>(roles.length);
+            for (String role : roles) {
+                Assert.isTrue(!role.startsWith("ROLE_"), () -> "roles cannot start with ROLE_ Got " + role);
+                grantedAuthorities.add("ROLE_" + role);
+            }
+            return grantedAuthorities;
+        }
+
+        if (!(roles.length == 1 && "USER".equals(roles[0]))) {
+            throw new IllegalStateException("You cannot define roles attribute " + Arrays.asList(roles)
+                    + " with authorities attribute " + Arrays.asList(authorities));
+        }
+        return Arrays.asList(authorities);
+    }
+
+    public String getToken() {
+        return this.token;
+    }
+
+    /**
+     * The signature algorithm, empty when the token is not signed.
+     *
+     * @return
+     */
+    public String getSignatureAlgorithm() {
+        return this.signatureAlgorithm;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public List<String> getAudience() {
+        return this.audience;
+    }
+
+    public String getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * The expiration relative to the clock, empty when absolute or not set.
+     *
+     * @return
+     */
+    public String getExpiresIn() {
+        return this.expiresIn;
+    }
+
+    /**
+     * Returns the attributes with the {@link #getExpiresIn() relative expiration} resolved against the given clock,
+     * to the second, and the issuedAt defaulting to the current instant.
+     *
+     * @param clock the clock
+     * @return the resolved attributes, these ones if the expiration is not relative
+     */
+    public WithMockJwtTokenAttributes resolve(Clock clock) {
+        if (this.expiresIn.isEmpty()) {
+            return this;
+        }
+
+        Instant now = clock.instant().truncatedTo(ChronoUnit.SECONDS);
+        Builder builder = builder()
+                .token(this.token)
+                .signatureAlgorithm(this.signatureAlgorithm)
+                .subject(this.subject)
+                .audience(this.audience.toArray(new String[0]))
+                .expiresAt(expiresAt(now).toString())
+                .issuedAt(this.issuedAt.isEmpty() ? now.toString() : this.issuedAt)
+                .jti(this.jti)
+                .scope(this.scope.toArray(new String[0]))
+                .authorities(this.authorities);
+        this.claims.forEach(builder::claim);
+        return builder.build();
+    }
+
+    /**
+     * Whether the given expiration, resolved earlier, is still current. Against a {@link MockJwtTokenClock} following
+     * the system clock it is as long as it was resolved less than half of the {@link #getExpiresIn() relative
+     * expiration} ago, so that tokens are not minted again every second. Otherwise it is when it is the one
+     * {@link #resolve(Clock)} would give now, i.e. until the clock is moved.
+     *
+     * @param expiresAt the resolved expiration
+     * @param clock     the clock
+     * @return true if it is current, always when the expiration is not relative
+     */
+    public boolean isResolved(Instant expiresAt, Clock clock) {
+        if (this.expiresIn.isEmpty()) {
+            return true;
+        }
+        Instant now = clock.instant().truncatedTo(ChronoUnit.SECONDS);
+        if (!(clock instanceof MockJwtTokenClock) || ((MockJwtTokenClock) clock).isMoved()) {
+            return expiresAt(now).equals(expiresAt);
+        }
+        Duration expiresIn = Duration.parse(this.expiresIn);
+        Instant resolvedAt = expiresAt.minus(expiresIn);
+        return !resolvedAt.isAfter(now) && Duration.between(resolvedAt, now).compareTo(expiresIn.abs().dividedBy(2)) <= 0;
+    }
+
+    private Instant expiresAt(Instant now) {
+        return now.plus(Duration.parse(this.expiresIn));
+    }
+
+    public String getIssuedAt() {
+        return this.issuedAt;
+    }
+
+    public String getJti() {
+        return this.jti;
+    }
+
+    public List<String> getScope() {
+        return this.scope;
+    }
+
+    /**
+     * The resolved authorities, roles already carry the "ROLE_" prefix.
+     *
+     * @return
+     */
+    public List<String> getAuthorities() {
+        return this.authorities;
+    }
+
+    /**
+     * The additional claims, in declaration order.
+     *
+     * @return
+     */
+    public Map<String, Object> getClaims() {
+        return this.claims;
+    }
+
+    /**
+     * The claims of the JWT described by these attributes: the registered claims, the scope and the additional
+     * claims, instants and collections being immutable.
+     *
+     * @return the claims
+     */
+    public Map<String, Object> toClaims() {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(JwtClaimNames.SUB, this.subject);
+
+        if (!this.audience.isEmpty()) {
+            claims.put(JwtClaimNames.AUD, Collections.unmodifiableSet(new LinkedHashSet<>(this.audience)));
+        }
+
+        if (!this.expiresAt.isEmpty()) {
+            claims.put(JwtClaimNames.EXP, Instant.parse(this.expiresAt));
+        }
+
+        if (!this.issuedAt.isEmpty()) {
+            claims.put(JwtClaimNames.IAT, Instant.parse(this.issuedAt));
+        }
+
+        if (!this.jti.isEmpty()) {
+            claims.put(JwtClaimNames.JTI, this.jti);
+        }
+
+        if (!this.scope.isEmpty()) {
+            claims.put("scope", Collections.unmodifiableSet(new LinkedHashSet<>(this.scope)));
+        }
+
+        claims.putAll(this.claims);
+        return claims;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WithMockJwtTokenAttributes)) {
+            return false;
+        }
+        WithMockJwtTokenAttributes that = (WithMockJwtTokenAttributes) o;
+        return this.hashCode == that.hashCode
+                && Objects.equals(this.token, that.token)
+                && this.signatureAlgorithm.equals(that.signatureAlgorithm)
+                && Objects.equals(this.subject, that.subject)
+                && this.audience.equals(that.audience)
+                && Objects.equals(this.expiresAt, that.expiresAt)
+                && Objects.equals(this.expiresIn, that.expiresIn)
+                && Objects.equals(this.issuedAt, that.issuedAt)
+                && Objects.equals(this.jti, that.jti)
+                && this.scope.equals(that.scope)
+                && this.authorities.equals(that.authorities)
+                && this.claims.equals(that.claims);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "WithMockJwtTokenAttributes{subject=" + this.subject + ", authorities=" + this.authorities + "}";
+    }
+
+    /**
+     * Builder for {@link WithMockJwtTokenAttributes}.
+     */
+    public static final class Builder {
+
+        private String token;
+
+        private String fixture = "";
+
+        private String signatureAlgorithm = "";
+
+        private String subject;
+
+        private List<String> audience = Collections.emptyList();
+
+        private String expiresAt = "";
+
+        private String expiresIn = "";
+
+        private String issuedAt = "";
+
+        private String jti = "";
+
+        private List<String> scope = Collections.emptyList();
+
+        private List<String> authorities = Collections.emptyList();
+
+        private final List<String> generatedAuthorities = new ArrayList<>();
+
+        private final Map<String, Object> claims = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder token(String token) {
+            this.token = token;
+            return this;
+        }
+
+        /**
+         * The {@link MockJwtTokenFixtureFiles fixture} providing the claims not set on this builder.
+         *
+         * @param fixture the fixture name
+         * @return this builder
+         */
+        public Builder fixture(String fixture) {
+            this.fixture = StringUtils.hasText(fixture) ? fixture : "";
+            return this;
+        }
+
+        public Builder signatureAlgorithm(String signatureAlgorithm) {
+            this.signatureAlgorithm = StringUtils.hasText(signatureAlgorithm) ? signatureAlgorithm : "";
+            return this;
+        }
+
+        public Builder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        public Builder audience(String... audience) {
+            this.audience = Arrays.asList(audience);
+            return this;
+        }
+
+        public Builder expiresAt(String expiresAt) {
+            this.expiresAt = expiresAt;
+            return this;
+        }
+
+        /**
+         * The expiration relative to the clock, an ISO-8601 duration.
+         *
+         * @param expiresIn the duration
+         * @return this builder
+         */
+        public Builder expiresIn(String expiresIn) {
+            this.expiresIn = StringUtils.hasText(expiresIn) ? expiresIn : "";
+            return this;
+        }
+
+        public Builder issuedAt(String issuedAt) {
+            this.issuedAt = issuedAt;
+            return this;
+        }
+
+        public Builder jti(String jti) {
+            this.jti = jti;
+            return this;
+        }
+
+        public Builder scope(String... scope) {
+            this.scope = Arrays.asList(scope);
+            return this;
+        }
+
+        public Builder authorities(List<String> authorities) {
+            this.authorities = authorities;
+            return this;
+        }
+
+        public Builder claim(String name, Object value) {
+            this.claims.put(name, value);
+            return this;
+        }
+
+        /**
+         * A claim holding {@code count} values, the prefix followed by the index.
+         *
+         * @param name        the claim name
+         * @param prefix      the prefix of every value
+         * @param count       the number of values
+         * @param authorities whether the values are also granted as authorities
+         * @return this builder
+         * @throws IllegalArgumentException if the count is negative
+         */
+        public Builder generatedClaim(String name, String prefix, int count, boolean authorities) {
+            Assert.isTrue(count >= 0, () -> "count cannot be negative Got " + count);
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(prefix + i);
+            }
+            this.claims.put(name, Collections.unmodifiableList(values));
+            if (authorities) {
+                this.generatedAuthorities.addAll(values);
+            }
+            return this;
+        }
+
+        public WithMockJwtTokenAttributes build() {
+            if (!this.expiresIn.isEmpty() && StringUtils.hasText(this.expiresAt)) {
+                throw new IllegalStateException("You cannot define expiresAt attribute " + this.expiresAt
+                        + " with expiresIn attribute " + this.expiresIn);
+            }
+            if (!this.fixture.isEmpty()) {
+                applyFixture(MockJwtTokenFixtureFiles.claims(this.fixture));
+            }
+            return new WithMockJwtTokenAttributes(this);
+        }
+
+        private void applyFixture(Map<String, Object> fixture) {
+            for (Map.Entry<String, Object> claim : fixture.entrySet()) {
+                Object value = claim.getValue();
+                switch (claim.getKey()) {
+                    case JwtClaimNames.SUB:
+                        this.subject = StringUtils.hasText(this.subject) ? this.subject : String.valueOf(value);
+                        break;
+                    case JwtClaimNames.AUD:
+                        this.audience = this.audience.isEmpty() ? strings(value, false) : this.audience;
+                        break;
+                    case JwtClaimNames.EXP:
+                        this.expiresAt = StringUtils.hasText(this.expiresAt) || !this.expiresIn.isEmpty()
+                                ? this.expiresAt : instant(value);
+                        break;
+                    case JwtClaimNames.IAT:
+                        this.issuedAt = StringUtils.hasText(this.issuedAt) ? this.issuedAt : instant(value);
+                        break;
+                    case JwtClaimNames.JTI:
+                        this.jti = StringUtils.hasText(this.jti) ? this.jti : String.valueOf(value);
+                        break;
+                    case "scope":
+                        this.scope = this.scope.isEmpty() ? strings(value, true) : this.scope;
+                        break;
+                    default:
+                        this.claims.putIfAbsent(claim.getKey(), value);
+                }
+            }
+        }
+
+        // a single string is a space delimited list for the scope, as in OAuth 2.0
+        private static List<String> strings(Object value, boolean delimited) {
+            if (value instanceof Collection) {
+                List<String> strings = new ArrayList<>();
+                for (Object element : (Collection<?>) value) {
+                    strings.add(String.valueOf(element));
+                }
+                return strings;
+            }
+            String string = String.valueOf(value);
+            return delimited ? Arrays.asList(StringUtils.tokenizeToStringArray(string, " ")) : Collections.singletonList(string);
+        }
+
+        // seconds since the epoch, as in a JWT, or an ISO-8601 instant
+        private static String instant(Object value) {
+            return value instanceof Number ? Instant.ofEpochSecond(((Number) value).longValue()).toString()
+                    : String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.Extension;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContextProvider;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Provides one invocation per identity of {@link WithMockJwtTokenMatrix}.
+ * <p>
+ * The {@link JwtAuthenticationToken}s are built up front, in parallel, by the
+ * {@link WithMockJwtTokenSecurityContextFactory}, converting the authorities with the converter bean of the test
+ * application context for {@link WithMockJwtToken#convertAuthorities()}. Each invocation installs a new
+ * {@link SecurityContext} in the {@link TestSecurityContextHolder} of the thread it runs on before each test and
+ * clears it afterwards. An authentication whose token was signed with a key retired since is built again. Each build
+ * is measured by the {@link MockJwtTokenMetrics} for the test class.
+ * <p>
+ * Concurrent invocations with different {@link WithMockJwtToken#securityStrategyName()}s would replace the JVM wide
+ * strategy under each other, they are rejected unless the {@link ThreadScopedSecurityContextHolderStrategy} is
+ * installed.
+ */
+public class WithMockJwtTokenMatrixExtension implements TestTemplateInvocationContextProvider {
+
+    private static final String PARALLEL_ENABLED_PROPERTY = "junit.jupiter.execution.parallel.enabled";
+
+    @Override
+    public boolean supportsTestTemplate(ExtensionContext context) {
+        return context.getTestMethod()
+                .map(method -> AnnotatedElementUtils.hasAnnotation(method, WithMockJwtTokenMatrix.class))
+                .orElse(false);
+    }
+
+    @Override
+    public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(ExtensionContext context) {
+        Method testMethod = context.getRequiredTestMethod();
+        WithMockJwtToken[] identities = AnnotatedElementUtils
+                .findMergedAnnotation(testMethod, WithMockJwtTokenMatrix.class).value();
+        if (isConcurrent(context) && !(SecurityContextHolder.getContextHolderStrategy()
+                instanceof ThreadScopedSecurityContextHolderStrategy)
+                && Arrays.stream(identities).map(WithMockJwtToken::securityStrategyName).distinct().count() > 1) {
+            throw new IllegalStateException("Concurrent identities of " + testMethod + " use different "
+                    + "securityStrategyName values, which requires the ThreadScopedSecurityContextHolderStrategy");
+        }
+        // only converted authorities need the application context, which is not loaded otherwise
+        BeanFactory beanFactory = Arrays.stream(identities).anyMatch(WithMockJwtToken::convertAuthorities)
+                ? SpringExtension.getApplicationContext(context).getAutowireCapableBeanFactory() : null;
+        Class<?> testClass = context.getRequiredTestClass();
+        List<JwtAuthenticationToken> authentications = Arrays.stream(identities)
+                .parallel()
+                .map(identity -> getAuthentication(testClass, identity, beanFactory))
+                .collect(Collectors.toList());
+
+        return IntStream.range(0, identities.length)
+                .mapToObj(i -> new IdentityInvocationContext(identities[i], authentications.get(i)));
+    }
+
+    // measured on the thread building it, which is not the one running the test
+    private static JwtAuthenticationToken getAuthentication(Class<?> testClass, WithMockJwtToken withMockJwtToken,
+                                                            BeanFactory beanFactory) {
+        MockJwtTokenMetrics.Sample sample = MockJwtTokenMetrics.start(testClass,
+                () -> WithMockJwtTokenSecurityContextFactory.isCached(withMockJwtToken, beanFactory));
+        JwtAuthenticationToken authentication = WithMockJwtTokenSecurityContextFactory.getAuthentication(
+                withMockJwtToken, beanFactory);
+        if (sample != null) {
+            sample.stop(authentication);
+        }
+        return authentication;
+    }
+
+    private static boolean isConcurrent(ExtensionContext context) {
+        return context.getExecutionMode() == ExecutionMode.CONCURRENT
+                && context.getConfigurationParameter(PARALLEL_ENABLED_PROPERTY).map(Boolean::parseBoolean).orElse(false);
+    }
+
+    private static final class IdentityInvocationContext implements TestTemplateInvocationContext {
+
+        private final WithMockJwtToken withMockJwtToken;
+
+        private final JwtAuthenticationToken authentication;
+
+        private IdentityInvocationContext(WithMockJwtToken withMockJwtToken, JwtAuthenticationToken authentication) {
+            this.withMockJwtToken = withMockJwtToken;
+            this.authentication = authentication;
+        }
+
+        @Override
+        public String getDisplayName(int invocationIndex) {
+            return "[" + invocationIndex + "] " + this.authentication.getName() + " " + this.authentication.getAuthorities();
+        }
+
+        @Override
+        public List<Extension> getAdditionalExtensions() {
+            return Collections.singletonList(new IdentityExtension(this.withMockJwtToken, this.authentication));
+        }
+    }
+
+    private static final class IdentityExtension implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+        private final WithMockJwtToken withMockJwtToken;
+
+        private volatile JwtAuthenticationToken authentication;
+
+        private IdentityExtension(WithMockJwtToken withMockJwtToken, JwtAuthenticationToken authentication) {
+            this.withMockJwtToken = withMockJwtToken;
+            this.authentication = authentication;
+        }
+
+        @Override
+        public void beforeEach(ExtensionContext context) {
+            if (!MockJwtTokenKeys.isCurrent(this.authentication.getToken())) {
+                BeanFactory beanFactory = this.withMockJwtToken.convertAuthorities()
+                        ? SpringExtension.getApplicationContext(context).getAutowireCapableBeanFactory() : null;
+                this.authentication = getAuthentication(context.getRequiredTestClass(), this.withMockJwtToken,
+                        beanFactory);
+            }
+            WithMockJwtTokenSecurityContextFactory.applyStrategy(this.withMockJwtToken.securityStrategyName());
+            SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+            securityContext.setAuthentication(this.authentication);
+            TestSecurityContextHolder.setContext(securityContext);
+        }
+
+        @Override
+        public void afterEach(ExtensionContext context) {
+            TestSecurityContextHolder.clearContext();
+        }
+
+        @Override
+        public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+            Class<?> type = parameterContext.getParameter().getType();
+            return type == JwtAuthenticationToken.class || type == Jwt.class;
+        }
+
+        @Override
+        public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+            return parameterContext.getParameter().getType() == Jwt.class ? this.authentication.getToken() : this.authentication;
+        }
+    }
+}
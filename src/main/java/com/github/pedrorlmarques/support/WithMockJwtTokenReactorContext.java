@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Map;
+
+/**
+ * Reactor {@link Context}s exposing a {@link WithMockJwtToken} identity through the
+ * {@link ReactiveSecurityContextHolder}, built once per authentication and shared by every subscription.
+ * <pre>
+ * StepVerifier.create(service.findAccounts().contextWrite(WithMockJwtTokenReactorContext.current()))
+ * </pre>
+ */
+public final class WithMockJwtTokenReactorContext {
+
+    private static final Map<Authentication, Context> contexts = new ConcurrentReferenceHashMap<>();
+
+    private WithMockJwtTokenReactorContext() {
+    }
+
+    /**
+     * The context of the identity held by the
+     * {@link org.springframework.security.test.context.TestSecurityContextHolder}.
+     *
+     * @return the context
+     * @throws IllegalStateException if the current authentication is not a {@link JwtAuthenticationToken}
+     */
+    public static Context current() {
+        return of(WithMockJwtTokenSecurityContextFactory.getCurrentAuthentication());
+    }
+
+    /**
+     * The context of the given authentication.
+     *
+     * @param authentication the authentication
+     * @return the context
+     */
+    public static Context of(Authentication authentication) {
+        return contexts.computeIfAbsent(authentication, key -> ReactiveSecurityContextHolder
+                .withSecurityContext(Mono.just(new SecurityContextImpl(key))));
+    }
+
+    static boolean contains(Authentication authentication) {
+        return contexts.containsKey(authentication);
+    }
+}
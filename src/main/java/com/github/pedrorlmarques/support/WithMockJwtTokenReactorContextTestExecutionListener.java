@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import org.reactivestreams.Subscription;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.security.test.context.support.ReactorContextTestExecutionListener;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+import org.springframework.util.ClassUtils;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * Exposes the {@link com.github.pedrorlmarques.annotation.WithMockJwtToken} identity of each test method through the
+ * {@link org.springframework.security.core.context.ReactiveSecurityContextHolder}.
+ * <p>
+ * It replaces, while tests with a {@link JwtAuthenticationToken} run, the hook of the
+ * {@link ReactorContextTestExecutionListener}, which builds a new Reactor {@link Context} for every subscriber:
+ * the {@link WithMockJwtTokenReactorContext cached context} of the identity held by the
+ * {@link TestSecurityContextHolder} of the subscribing thread is handed as is to the subscribers without a context
+ * of their own. Pipelines that already define a security context are left untouched.
+ * <p>
+ * Reactor hooks are global to the JVM, so the hook is installed once for all the test methods running concurrently
+ * and removed after the last of them. Building the context of each identity is measured by the
+ * {@link MockJwtTokenMetrics}.
+ */
+public class WithMockJwtTokenReactorContextTestExecutionListener extends AbstractTestExecutionListener {
+
+    private static final boolean reactorPresent = ClassUtils.isPresent("reactor.core.publisher.Hooks",
+            WithMockJwtTokenReactorContextTestExecutionListener.class.getClassLoader());
+
+    private static final String HOOK_ATTRIBUTE = WithMockJwtTokenReactorContextTestExecutionListener.class.getName()
+            + ".HOOK";
+
+    /**
+     * Runs just after the {@link ReactorContextTestExecutionListener} (11000).
+     *
+     * @return 11001
+     */
+    @Override
+    public int getOrder() {
+        return 11001;
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        Authentication authentication = TestSecurityContextHolder.getContext().getAuthentication();
+        if (reactorPresent && authentication instanceof JwtAuthenticationToken) {
+            MockJwtTokenMetrics.Sample sample = MockJwtTokenMetrics.start(testContext.getTestClass(),
+                    () -> WithMockJwtTokenReactorContext.contains(authentication));
+            IdentityHook.install(authentication);
+            testContext.setAttribute(HOOK_ATTRIBUTE, Boolean.TRUE);
+            if (sample != null) {
+                sample.stop(authentication);
+            }
+        }
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) {
+        if (testContext.removeAttribute(HOOK_ATTRIBUTE) != null) {
+            IdentityHook.reset();
+        }
+    }
+
+    // isolates the Reactor types, which are optional
+    private static final class IdentityHook {
+
+        private static final String KEY = WithMockJwtTokenReactorContextTestExecutionListener.class.getName();
+
+        // the key of the ReactorContextTestExecutionListener hook
+        private static final String SPRING_SECURITY_KEY = SecurityContext.class.getName();
+
+        private static final Object lock = new Object();
+
+        // the test methods currently relying on the hook
+        private static int installed;
+
+        // the context of the identity is built up front, before any subscription
+        private static void install(Authentication authentication) {
+            WithMockJwtTokenReactorContext.of(authentication);
+            synchronized (lock) {
+                Hooks.resetOnLastOperator(SPRING_SECURITY_KEY);
+                if (installed++ == 0) {
+                    Hooks.onLastOperator(KEY, Operators.lift((scannable, subscriber) -> {
+                        Authentication authentication = TestSecurityContextHolder.getContext().getAuthentication();
+                        if (authentication == null) {
+                            return subscriber;
+                        }
+                        return new IdentitySubscriber<>(subscriber, WithMockJwtTokenReactorContext.of(authentication));
+                    }));
+                }
+            }
+        }
+
+        private static void reset() {
+            synchronized (lock) {
+                if (--installed == 0) {
+                    Hooks.resetOnLastOperator(KEY);
+                }
+            }
+        }
+    }
+
+    private static final class IdentitySubscriber<T> implements CoreSubscriber<T> {
+
+        private final CoreSubscriber<T> delegate;
+
+        private final Context context;
+
+        private IdentitySubscriber(CoreSubscriber<T> delegate, Context context) {
+            this.delegate = delegate;
+            this.context = context;
+        }
+
+        @Override
+        public Context currentContext() {
+            Context context = this.delegate.currentContext();
+            if (context.isEmpty()) {
+                return this.context;
+            }
+            if (context.hasKey(SecurityContext.class)) {
+                return context;
+            }
+            return context.putAll(this.context.readOnly());
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(T value) {
+            this.delegate.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.delegate.onComplete();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+/**
+ * MockMvc {@link RequestPostProcessor}s sending the current {@link WithMockJwtToken} identity to the application.
+ */
+public final class WithMockJwtTokenRequestPostProcessors {
+
+    private static final RequestPostProcessor bearerToken = request -> {
+        request.addHeader(HttpHeaders.AUTHORIZATION, BearerTokenHeaders.current());
+        return request;
+    };
+
+    private WithMockJwtTokenRequestPostProcessors() {
+    }
+
+    /**
+     * Adds an {@code Authorization: Bearer} header carrying the token of the current {@link WithMockJwtToken}, so
+     * that requests go through the {@code BearerTokenAuthenticationFilter} and the configured {@code JwtDecoder}.
+     * The token must be {@link WithMockJwtToken#signatureAlgorithm() signed} for a decoder to validate it.
+     * <pre>
+     * mockMvc.perform(get("/accounts").with(bearerToken()))
+     * </pre>
+     *
+     * @return the post processor
+     */
+    public static RequestPostProcessor bearerToken() {
+        return bearerToken;
+    }
+}
@@ -17,93 +17,335 @@
 package com.github.pedrorlmarques.support;
 
 import com.github.pedrorlmarques.annotation.WithMockJwtToken;
-import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import com.nimbusds.jwt.SignedJWT;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.oauth2.jwt.JoseHeaderNames;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.test.context.TestSecurityContextHolder;
 import org.springframework.security.test.context.support.WithSecurityContextFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentReferenceHashMap;
 
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * A {@link WithMockJwtTokenSecurityContextFactory} that works with {@link WithMockJwtToken}.
+ * <p>
+ * The {@link JwtAuthenticationToken} of each distinct {@link WithMockJwtToken} is built once and cached,
+ * every invocation only creates a new {@link SecurityContext} holding it. The number of cached identities
+ * is bounded by the {@value #CACHE_SIZE_PROPERTY} system property (default {@value #DEFAULT_CACHE_SIZE}),
+ * the least recently used ones being evicted first. Cache hits take no lock and distinct identities are built in
+ * parallel, each one once. Signed tokens are therefore also signed once per identity and signing key.
+ * The attribute values of each annotation are read once as well, usages being validated at compile time by
+ * {@link com.github.pedrorlmarques.processor.WithMockJwtTokenProcessor}.
+ * <p>
+ * The JVM wide {@link SecurityContextHolder} strategy is only reset when the requested
+ * {@link WithMockJwtToken#securityStrategyName()} differs from the installed one. When the
+ * {@link ThreadScopedSecurityContextHolderStrategy} is installed the mode is switched for the current thread only,
+ * which makes the factory safe to use from tests running in parallel.
+ * <p>
+ * With {@link WithMockJwtToken#convertAuthorities()} the authorities are derived from the token by the converter bean
+ * of the {@link BeanFactory} the factory was created by, the result being cached per converter and identity.
+ * <p>
+ * The authorities are an immutable hashed set, see {@link WithMockJwtToken#generatedClaims()} for tokens carrying
+ * thousands of them.
+ * <p>
+ * The cost of each call is handed to the {@link MockJwtTokenMetricsRecorder}s, if any.
  */
-public class WithMockJwtTokenSecurityContextFactory implements WithSecurityContextFactory<WithMockJwtToken> {
+public class WithMockJwtTokenSecurityContextFactory implements WithSecurityContextFactory<WithMockJwtToken>,
+        BeanFactoryAware {
+
+    public static final String CACHE_SIZE_PROPERTY = "withMockJwtToken.cache.size";
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    // keyed by the unresolved snapshot, an identity with a relative expiration is built again once the clock moved
+    private static final MockJwtTokenCache<WithMockJwtTokenAttributes, JwtAuthenticationToken> authentications =
+            new MockJwtTokenCache<>(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE),
+                    attributes -> createAuthentication(attributes.resolve(MockJwtTokenClock.get())));
+
+    // annotation proxies compare by value without cloning their arrays, the snapshot is taken once per annotation
+    private static final MockJwtTokenCache<WithMockJwtToken, WithMockJwtTokenAttributes> snapshots =
+            new MockJwtTokenCache<>(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE),
+                    WithMockJwtTokenAttributes::from);
+
+    private static final ResolvableType AUTHORITIES_CONVERTER_TYPE = ResolvableType.forClassWithGenerics(Converter.class,
+            ResolvableType.forClass(Jwt.class), ResolvableType.forClassWithGenerics(Collection.class, GrantedAuthority.class));
+
+    private static final JwtGrantedAuthoritiesConverter defaultAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+
+    // the converter of each bean factory, looked up once
+    private static final Map<BeanFactory, Object> authoritiesConverters = new ConcurrentReferenceHashMap<>();
+
+    // the authentications of each converter
+    private static final Map<Object, MockJwtTokenCache<WithMockJwtTokenAttributes, JwtAuthenticationToken>>
+            convertedAuthentications = new ConcurrentReferenceHashMap<>();
+
+    private static final Object strategyMonitor = new Object();
+
+    // written under the strategy monitor, the initialize count last
+    private static volatile String installedStrategyName;
+
+    private static volatile int installedStrategyInitializeCount = -1;
+
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
 
     @Override
     public SecurityContext createSecurityContext(WithMockJwtToken withMockJwtToken) {
+        MockJwtTokenMetrics.Sample sample = MockJwtTokenMetrics.start(() -> isCached(withMockJwtToken, this.beanFactory));
 
-        SecurityContextHolder.setStrategyName(withMockJwtToken.securityStrategyName());
+        applyStrategy(withMockJwtToken.securityStrategyName());
 
         SecurityContext context = SecurityContextHolder.createEmptyContext();
-        //default jwt token attributes
-        Jwt.Builder jwtBuilder = Jwt
-                .withTokenValue(withMockJwtToken.token())
-                .header("alg", "RS256")
-                .header("typ", "JWT")
-                .subject(withMockJwtToken.subject());
-
-        if (withMockJwtToken.audience().length != 0) {
-            jwtBuilder = jwtBuilder.audience(new HashSet<>(Arrays.asList(withMockJwtToken.audience())));
+        context.setAuthentication(getAuthentication(withMockJwtToken, this.beanFactory));
+
+        if (sample != null) {
+            sample.stop(context.getAuthentication());
         }
+        return context;
+    }
 
-        if (!withMockJwtToken.expiresAt().isEmpty()) {
-            jwtBuilder.expiresAt(Instant.parse(withMockJwtToken.expiresAt()));
+    private static boolean isConvertedCached(WithMockJwtToken withMockJwtToken, BeanFactory beanFactory) {
+        Object converter = beanFactory != null ? authoritiesConverters.get(beanFactory) : null;
+        MockJwtTokenCache<WithMockJwtTokenAttributes, JwtAuthenticationToken> converted =
+                converter != null ? convertedAuthentications.get(converter) : null;
+        if (converted == null || !snapshots.contains(withMockJwtToken)) {
+            return false;
         }
+        WithMockJwtTokenAttributes attributes = snapshots.get(withMockJwtToken);
+        return converted.contains(attributes, authentication -> isCurrent(attributes, authentication));
+    }
 
-        if (!withMockJwtToken.issuedAt().isEmpty()) {
-            jwtBuilder.issuedAt(Instant.parse(withMockJwtToken.issuedAt()));
+    private static JwtAuthenticationToken getConvertedAuthentication(WithMockJwtToken withMockJwtToken,
+            BeanFactory beanFactory) {
+        Assert.state(beanFactory != null, "convertAuthorities requires the factory to be created by a BeanFactory");
+        Object converter = authoritiesConverters.computeIfAbsent(beanFactory,
+                WithMockJwtTokenSecurityContextFactory::findAuthoritiesConverter);
+        WithMockJwtTokenAttributes attributes = snapshots.get(withMockJwtToken);
+        return convertedAuthentications
+                .computeIfAbsent(converter, key -> new MockJwtTokenCache<>(
+                        Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE),
+                        cached -> convertAuthentication(key, getAuthentication(cached))))
+                .get(attributes, authentication -> isCurrent(attributes, authentication));
+    }
+
+    private static Object findAuthoritiesConverter(BeanFactory beanFactory) {
+        Object converter = beanFactory.getBeanProvider(AUTHORITIES_CONVERTER_TYPE).getIfUnique();
+        if (converter == null) {
+            converter = beanFactory.getBeanProvider(JwtAuthenticationConverter.class).getIfUnique();
         }
+        return converter != null ? converter : defaultAuthoritiesConverter;
+    }
 
-        if (!withMockJwtToken.jti().isEmpty()) {
-            jwtBuilder.jti(withMockJwtToken.jti());
+    // the name is the one of the converted authentication, e.g. its principal claim
+    @SuppressWarnings("unchecked")
+    private static JwtAuthenticationToken convertAuthentication(Object converter, JwtAuthenticationToken authentication) {
+        Jwt jwt = authentication.getToken();
+        if (converter instanceof JwtAuthenticationConverter) {
+            AbstractAuthenticationToken converted = ((JwtAuthenticationConverter) converter).convert(jwt);
+            return new MockJwtAuthenticationToken(jwt, toSet(converted.getAuthorities()), converted.getName());
         }
+        Collection<GrantedAuthority> authorities = ((Converter<Jwt, Collection<GrantedAuthority>>) converter).convert(jwt);
+        return new MockJwtAuthenticationToken(jwt, toSet(authorities), authentication.getName());
+    }
+
+    /**
+     * Returns the cached {@link JwtAuthenticationToken} of the given annotation, a relative expiration being resolved
+     * against the {@link MockJwtTokenClock}.
+     *
+     * @param withMockJwtToken the annotation
+     * @return the authentication
+     */
+    static JwtAuthenticationToken getAuthentication(WithMockJwtToken withMockJwtToken) {
+        return getAuthentication(snapshots.get(withMockJwtToken));
+    }
 
-        if (withMockJwtToken.scope().length != 0) {
-            jwtBuilder.claim("scope", new HashSet<>(Arrays.asList(withMockJwtToken.scope())));
+    private static JwtAuthenticationToken getAuthentication(WithMockJwtTokenAttributes attributes) {
+        return authentications.get(attributes, authentication -> isCurrent(attributes, authentication));
+    }
+
+    // neither timed for an earlier clock nor signed with a retired key
+    private static boolean isCurrent(WithMockJwtTokenAttributes attributes, JwtAuthenticationToken authentication) {
+        Jwt jwt = authentication.getToken();
+        return attributes.isResolved(jwt.getExpiresAt(), MockJwtTokenClock.get()) && MockJwtTokenKeys.isCurrent(jwt);
+    }
+
+    /**
+     * Returns the cached {@link JwtAuthenticationToken} of the given annotation, its authorities being converted by
+     * the converter bean of the given {@link BeanFactory} with {@link WithMockJwtToken#convertAuthorities()}.
+     *
+     * @param withMockJwtToken the annotation
+     * @param beanFactory the bean factory of the test, may be null when the authorities are not converted
+     * @return the authentication
+     * @throws IllegalStateException if the authorities are converted without a bean factory
+     */
+    static JwtAuthenticationToken getAuthentication(WithMockJwtToken withMockJwtToken, BeanFactory beanFactory) {
+        return withMockJwtToken.convertAuthorities()
+                ? getConvertedAuthentication(withMockJwtToken, beanFactory) : getAuthentication(withMockJwtToken);
+    }
+
+    /**
+     * Whether the {@link JwtAuthenticationToken} of the given annotation is already built.
+     *
+     * @param withMockJwtToken the annotation
+     * @return true if it is cached
+     */
+    static boolean isCached(WithMockJwtToken withMockJwtToken) {
+        if (!snapshots.contains(withMockJwtToken)) {
+            return false;
         }
+        WithMockJwtTokenAttributes attributes = snapshots.get(withMockJwtToken);
+        return authentications.contains(attributes, authentication -> isCurrent(attributes, authentication));
+    }
 
-        List<GrantedAuthority> grantedAuthorities = getGrantedAuthorities(withMockJwtToken);
+    /**
+     * Whether the {@link JwtAuthenticationToken} returned by {@link #getAuthentication(WithMockJwtToken, BeanFactory)}
+     * is already built.
+     *
+     * @param withMockJwtToken the annotation
+     * @param beanFactory the bean factory of the test, may be null
+     * @return true if it is cached
+     */
+    static boolean isCached(WithMockJwtToken withMockJwtToken, BeanFactory beanFactory) {
+        return withMockJwtToken.convertAuthorities()
+                ? isConvertedCached(withMockJwtToken, beanFactory) : isCached(withMockJwtToken);
+    }
+
+    /**
+     * Signs the claims of the given token again with the current key of its algorithm, e.g. once its key was retired
+     * by a {@link MockJwtTokenKeys#rotate() rotation}. The token is registered for the {@link MockJwtTokenDecoder}.
+     *
+     * @param jwt the signed token
+     * @return the token signed again
+     */
+    static Jwt signAgain(Jwt jwt) {
+        return sign(String.valueOf(jwt.getHeaders().get(JoseHeaderNames.ALG)), jwt.getClaims());
+    }
+
+    /**
+     * Returns the authentication of the running test, held by the {@link TestSecurityContextHolder}.
+     *
+     * @return the authentication
+     * @throws IllegalStateException if the current authentication is not a {@link JwtAuthenticationToken}
+     */
+    static JwtAuthenticationToken getCurrentAuthentication() {
+        Authentication authentication = TestSecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof JwtAuthenticationToken)) {
+            throw new IllegalStateException("Expected a JwtAuthenticationToken, is the test annotated with "
+                    + "@WithMockJwtToken? Got " + authentication);
+        }
+        return (JwtAuthenticationToken) authentication;
+    }
 
-        if (withMockJwtToken.additionalClaims().length != 0) {
-            for (WithMockJwtTokenClaim withMockJwtTokenClaim : withMockJwtToken.additionalClaims()) {
-                jwtBuilder.claim(withMockJwtTokenClaim.name(), withMockJwtTokenClaim.value());
+    /**
+     * Installs the given {@link SecurityContextHolder} strategy, for the current thread only when the
+     * {@link ThreadScopedSecurityContextHolderStrategy} is installed.
+     *
+     * @param strategyName the strategy name
+     */
+    static void applyStrategy(String strategyName) {
+        SecurityContextHolderStrategy strategy = SecurityContextHolder.getContextHolderStrategy();
+        if (strategy instanceof ThreadScopedSecurityContextHolderStrategy) {
+            ((ThreadScopedSecurityContextHolderStrategy) strategy).setStrategyName(strategyName);
+            return;
+        }
+
+        // the initialize count tells whether someone else replaced the strategy since we installed it
+        if (isInstalled(strategyName)) {
+            return;
+        }
+        synchronized (strategyMonitor) {
+            if (!isInstalled(strategyName)) {
+                SecurityContextHolder.setStrategyName(strategyName);
+                installedStrategyName = strategyName;
+                installedStrategyInitializeCount = SecurityContextHolder.getInitializeCount();
             }
         }
+    }
 
-        Jwt jwt = jwtBuilder.build();
+    private static boolean isInstalled(String strategyName) {
+        return Objects.equals(installedStrategyName, strategyName)
+                && installedStrategyInitializeCount == SecurityContextHolder.getInitializeCount();
+    }
 
-        JwtAuthenticationToken jwtAuthenticationToken = new JwtAuthenticationToken(jwt, grantedAuthorities, jwt.getSubject());
-        context.setAuthentication(jwtAuthenticationToken);
+    /**
+     * Builds the {@link JwtAuthenticationToken} described by the given attributes, bypassing the cache. The token
+     * is registered for the {@link MockJwtTokenDecoder}.
+     *
+     * @param attributes the attributes
+     * @return the authentication
+     */
+    static JwtAuthenticationToken createAuthentication(WithMockJwtTokenAttributes attributes) {
+        Map<String, Object> claims = attributes.toClaims();
 
-        return context;
+        //default jwt token attributes
+        Jwt jwt;
+        if (attributes.getSignatureAlgorithm().isEmpty()) {
+            jwt = Jwt
+                    .withTokenValue(attributes.getToken())
+                    .header("alg", "RS256")
+                    .header("typ", "JWT")
+                    .claims(jwtClaims -> jwtClaims.putAll(claims))
+                    .build();
+            MockJwtTokenRegistry.register(jwt);
+        } else {
+            jwt = sign(attributes.getSignatureAlgorithm(), claims);
+        }
+
+        return new MockJwtAuthenticationToken(jwt, getGrantedAuthorities(attributes), jwt.getSubject());
     }
 
+    private static Jwt sign(String algorithm, Map<String, Object> claims) {
+        SignedJWT signedJwt = MockJwtTokenSigner.sign(MockJwtTokenKeys.algorithm(algorithm), claims);
+        Jwt jwt = Jwt
+                .withTokenValue(signedJwt.serialize())
+                .headers(headers -> headers.putAll(signedJwt.getHeader().toJSONObject()))
+                .claims(jwtClaims -> jwtClaims.putAll(claims))
+                .build();
+        MockJwtTokenRegistry.register(jwt);
+        return jwt;
+    }
 
-    private List<GrantedAuthority> getGrantedAuthorities(WithMockJwtToken withMockJwtToken) {
-        List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
+    // hashed and deduplicated, keeping the declaration order
+    static Set<GrantedAuthority> getGrantedAuthorities(WithMockJwtTokenAttributes attributes) {
+        Set<GrantedAuthority> grantedAuthorities = new LinkedHashSet<>(
+                (int) (attributes.getAuthorities().size() / 0.75f) + 1);
 
-        for (String authority : withMockJwtToken.authorities()) {
+        for (String authority : attributes.getAuthorities()) {
             grantedAuthorities.add(new SimpleGrantedAuthority(authority));
         }
+        return Collections.unmodifiableSet(grantedAuthorities);
+    }
 
-        if (grantedAuthorities.isEmpty()) {
-            for (String role : withMockJwtToken.roles()) {
-                Assert.isTrue(!role.startsWith("ROLE_"), () -> "roles cannot start with ROLE_ Got " + role);
-                grantedAuthorities.add(new SimpleGrantedAuthority("ROLE_" + role));
-            }
-        } else if (!(withMockJwtToken.roles().length == 1 && "USER".equals(withMockJwtToken.roles()[0]))) {
-            throw new IllegalStateException("You cannot define roles attribute " + Arrays.asList(withMockJwtToken.roles())
-                    + " with authorities attribute " + Arrays.asList(withMockJwtToken.authorities()));
+    private static Set<GrantedAuthority> toSet(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null || authorities.isEmpty()) {
+            return Collections.emptySet();
         }
-        return grantedAuthorities;
+        Set<GrantedAuthority> grantedAuthorities = new LinkedHashSet<>((int) (authorities.size() / 0.75f) + 1);
+        grantedAuthorities.addAll(authorities);
+        return Collections.unmodifiableSet(grantedAuthorities);
     }
 }
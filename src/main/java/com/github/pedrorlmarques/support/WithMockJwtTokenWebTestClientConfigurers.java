@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.reactive.server.WebTestClientConfigurer;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+/**
+ * {@link WebTestClientConfigurer}s sending the current {@link WithMockJwtToken} identity to the application.
+ */
+public final class WithMockJwtTokenWebTestClientConfigurers {
+
+    private static final WebTestClientConfigurer bearerToken = new BearerTokenConfigurer();
+
+    private WithMockJwtTokenWebTestClientConfigurers() {
+    }
+
+    /**
+     * Adds an {@code Authorization: Bearer} header carrying the token of the current {@link WithMockJwtToken} to every
+     * request, so that they go through the {@code BearerTokenAuthenticationWebFilter} and the configured
+     * {@code ReactiveJwtDecoder}. The header is resolved when each request is sent.
+     * <pre>
+     * webTestClient.mutateWith(bearerToken()).get().uri("/accounts").exchange()
+     * </pre>
+     *
+     * @return the configurer
+     */
+    public static WebTestClientConfigurer bearerToken() {
+        return bearerToken;
+    }
+
+    private static final class BearerTokenConfigurer implements WebTestClientConfigurer {
+
+        @Override
+        public void afterConfigurerAdded(WebTestClient.Builder builder, WebHttpHandlerBuilder httpHandlerBuilder,
+                                         ClientHttpConnector connector) {
+            builder.filter((request, next) -> next.exchange(ClientRequest.from(request)
+                    .headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, BearerTokenHeaders.current()))
+                    .build()));
+        }
+    }
+}
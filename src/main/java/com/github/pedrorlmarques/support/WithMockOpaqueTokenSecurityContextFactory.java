@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockOpaqueToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.core.DefaultOAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
+import org.springframework.security.test.context.support.WithSecurityContextFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A {@link WithSecurityContextFactory} that works with {@link WithMockOpaqueToken}.
+ * <p>
+ * Like {@link WithMockJwtTokenSecurityContextFactory} the {@link BearerTokenAuthentication} of each distinct
+ * identity is built once and cached, its token being registered for the {@link MockIntrospectionServer}.
+ */
+public class WithMockOpaqueTokenSecurityContextFactory implements WithSecurityContextFactory<WithMockOpaqueToken> {
+
+    // keyed by the unresolved snapshot, an identity with a relative expiration is built again once the clock moved
+    private static final MockJwtTokenCache<WithMockJwtTokenAttributes, BearerTokenAuthentication> authentications =
+            new MockJwtTokenCache<>(Integer.getInteger(WithMockJwtTokenSecurityContextFactory.CACHE_SIZE_PROPERTY,
+                    WithMockJwtTokenSecurityContextFactory.DEFAULT_CACHE_SIZE),
+                    attributes -> createAuthentication(attributes.resolve(MockJwtTokenClock.get())));
+
+    private static final MockJwtTokenCache<WithMockOpaqueToken, WithMockJwtTokenAttributes> snapshots =
+            new MockJwtTokenCache<>(Integer.getInteger(WithMockJwtTokenSecurityContextFactory.CACHE_SIZE_PROPERTY,
+                    WithMockJwtTokenSecurityContextFactory.DEFAULT_CACHE_SIZE),
+                    WithMockJwtTokenAttributes::from);
+
+    @Override
+    public SecurityContext createSecurityContext(WithMockOpaqueToken withMockOpaqueToken) {
+        MockJwtTokenMetrics.Sample sample = MockJwtTokenMetrics.start(() -> snapshots.contains(withMockOpaqueToken)
+                && authentications.contains(snapshots.get(withMockOpaqueToken),
+                        authentication -> isCurrent(snapshots.get(withMockOpaqueToken), authentication)));
+
+        WithMockJwtTokenSecurityContextFactory.applyStrategy(withMockOpaqueToken.securityStrategyName());
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        WithMockJwtTokenAttributes attributes = snapshots.get(withMockOpaqueToken);
+        context.setAuthentication(authentications.get(attributes, authentication -> isCurrent(attributes, authentication)));
+
+        if (sample != null) {
+            sample.stop(context.getAuthentication());
+        }
+        return context;
+    }
+
+    private static boolean isCurrent(WithMockJwtTokenAttributes attributes, BearerTokenAuthentication authentication) {
+        return attributes.isResolved(authentication.getToken().getExpiresAt(), MockJwtTokenClock.get());
+    }
+
+    /**
+     * Builds the {@link BearerTokenAuthentication} described by the given attributes, bypassing the cache. The token
+     * is registered for the {@link MockIntrospectionServer}.
+     *
+     * @param attributes the attributes
+     * @return the authentication
+     */
+    static BearerTokenAuthentication createAuthentication(WithMockJwtTokenAttributes attributes) {
+        Assert.hasText(attributes.getSubject(), "subject must be set unless a fixture is used");
+
+        // shaped like the attributes of an OpaqueTokenIntrospector
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(OAuth2TokenIntrospectionClaimNames.ACTIVE, true);
+        for (Map.Entry<String, Object> claim : attributes.toClaims().entrySet()) {
+            Object value = claim.getValue();
+            claims.put(claim.getKey(), value instanceof Set
+                    ? Collections.unmodifiableList(new ArrayList<>((Set<?>) value)) : value);
+        }
+
+        Instant issuedAt = (Instant) claims.get(OAuth2TokenIntrospectionClaimNames.IAT);
+        Instant expiresAt = (Instant) claims.get(OAuth2TokenIntrospectionClaimNames.EXP);
+        if (issuedAt != null && expiresAt != null && !expiresAt.isAfter(issuedAt)) {
+            // an already expired token, OAuth2AccessToken requires expiresAt to be after issuedAt
+            issuedAt = null;
+        }
+        String token = StringUtils.hasText(attributes.getToken()) ? attributes.getToken() : UUID.randomUUID().toString();
+        Set<GrantedAuthority> authorities = WithMockJwtTokenSecurityContextFactory.getGrantedAuthorities(attributes);
+
+        BearerTokenAuthentication authentication = new BearerTokenAuthentication(
+                new DefaultOAuth2AuthenticatedPrincipal(attributes.getSubject(), Collections.unmodifiableMap(claims),
+                        authorities),
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token, issuedAt, expiresAt,
+                        attributes.getScope().isEmpty() ? null : Set.copyOf(attributes.getScope())),
+                authorities);
+        MockOpaqueTokenRegistry.register(authentication);
+        return authentication;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.generator;
+
+import com.github.pedrorlmarques.support.MockJwtTokenKeys;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MockJwtTokenGeneratorTest {
+
+    @TempDir
+    Path output;
+
+    @Test
+    public void generatedTokensAreDistinctAndValid() throws Exception {
+        MockJwtTokenGenerator generator = MockJwtTokenGenerator.builder()
+                .subject("user-{n}")
+                .roles("ADMIN+USER:1,USER:9")
+                .rolesClaim("roles")
+                .claim("tenant", "tenant-{n%10}")
+                .scope("read")
+                .batchSize(128)
+                .parallelism(4)
+                .build();
+        Path tokens = this.output.resolve("tokens.txt");
+
+        generator.generate(1000, tokens);
+
+        List<String> lines = Files.readAllLines(tokens);
+        assertThat(lines).hasSize(1000).doesNotHaveDuplicates();
+        JwtDecoder jwtDecoder = MockJwtTokenKeys.jwtDecoder();
+        for (int i = 0; i < lines.size(); i++) {
+            Jwt jwt = jwtDecoder.decode(lines.get(i));
+            assertThat(jwt.getSubject()).isEqualTo("user-" + i);
+            assertThat(jwt.getClaimAsString("tenant")).isEqualTo("tenant-" + i % 10);
+            assertThat(jwt.getClaimAsStringList("roles")).isEqualTo(i % 10 == 0 ? List.of("ADMIN", "USER") : List.of("USER"));
+            assertThat(jwt.getHeaders()).containsEntry("alg", "HS256");
+        }
+    }
+
+    @Test
+    public void mintIsDeterministicPerIndex() {
+        MockJwtTokenGenerator generator = MockJwtTokenGenerator.builder().subject("user-{n}").build();
+
+        assertThat(MockJwtTokenKeys.jwtDecoder().decode(generator.mint(42)).getSubject()).isEqualTo("user-42");
+        assertThat(generator.mint(42)).isEqualTo(generator.mint(42));
+    }
+
+    @Test
+    public void malformedTemplateIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().subject("user-{n+1}").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected {n} or {n%K} in user-{n+1}");
+    }
+
+    @Test
+    public void negativeCountIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.Options.parse(new String[]{"--count=-1"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("count cannot be negative Got -1");
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().build().generate(-1, Paths.get("unused.txt")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("count cannot be negative Got -1");
+    }
+
+    @Test
+    public void malformedClaimIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.Options.parse(new String[]{"--claim=tenant"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected --claim=name=template Got --claim=tenant");
+    }
+
+    @Test
+    public void nonNumericCountIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.Options.parse(new String[]{"--count=many"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("count must be a number Got many");
+    }
+
+    @Test
+    public void nonPositiveParallelismIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().parallelism(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("parallelism must be positive");
+    }
+
+    @Test
+    public void malformedExpiresAtIsRejectedWhenBuilding() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().expiresAt("tomorrow").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("expiresAt must be an ISO-8601 instant Got tomorrow");
+    }
+
+    @Test
+    public void prefixedRolesAreRejectedWhenBuilding() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().roles(1, "ROLE_ADMIN").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("roles cannot start with ROLE_ Got ROLE_ADMIN");
+    }
+
+    @Test
+    public void nonPositiveModuloIsRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder().subject("user-{n%0}").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("K must be positive in {n%K} Got user-{n%0}");
+    }
+
+    @Test
+    public void outOfRangeNumbersAreRejected() {
+        assertThatThrownBy(() -> MockJwtTokenGenerator.Options.parse(new String[]{"--parallelism=4294967297"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("parallelism cannot exceed 2147483647 Got 4294967297");
+        assertThatThrownBy(() -> MockJwtTokenGenerator.builder()
+                .roles(Integer.MAX_VALUE, "ADMIN").roles(1, "USER").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("the total weight of the roles cannot exceed 2147483647");
+    }
+}
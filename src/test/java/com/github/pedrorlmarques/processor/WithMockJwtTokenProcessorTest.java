@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WithMockJwtTokenProcessorTest {
+
+    @TempDir
+    Path output;
+
+    @Test
+    public void validUsageCompiles() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.AdminTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;\n"
+                        + "@WithMockJwtToken(subject = \"admin\", roles = \"ADMIN\", additionalClaims = @WithMockJwtTokenClaim(name = \"tenant\", value = \"dev\"))\n"
+                        + "class AdminTest {\n"
+                        + "    @WithMockJwtToken(subject = \"pedro\", authorities = {\"read\", \"write\"})\n"
+                        + "    void readWrite() {}\n"
+                        + "    @WithMockJwtToken(subject = \"pedro\", authorities = {\"read\", \"write\"})\n"
+                        + "    void readWrite(String overload) {}\n"
+                        + "}\n");
+
+        assertThat(errors).isEmpty();
+        assertThat(this.output.resolve("example/AdminTest.class")).exists();
+    }
+
+    @Test
+    public void inheritedAnnotationIsValidatedWhereDeclared() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.InheritingTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "@WithMockJwtToken(subject = \"admin\", roles = \"ROLE_ADMIN\")\n"
+                        + "class AnnotatedBase {}\n"
+                        + "class InheritingTest extends AnnotatedBase {}\n");
+
+        assertThat(errors).extracting(error -> error.getMessage(null)).containsExactly("roles cannot start with ROLE_ Got ROLE_ADMIN");
+        assertThat(this.output.resolve("example/InheritingTest.class")).doesNotExist();
+    }
+
+    @Test
+    public void inheritingSubclassCompiles() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.InheritingTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "@WithMockJwtToken(subject = \"admin\")\n"
+                        + "class AnnotatedBase {}\n"
+                        + "class InheritingTest extends AnnotatedBase {}\n");
+
+        assertThat(errors).isEmpty();
+        assertThat(this.output.resolve("example/InheritingTest.class")).exists();
+    }
+
+    @Test
+    public void nestedUsagesAreValidated() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.NestedTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithClassScopedMockJwtToken;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix;\n"
+                        + "@WithClassScopedMockJwtToken(@WithMockJwtToken(subject = \"admin\", roles = \"ROLE_ADMIN\"))\n"
+                        + "class NestedTest {\n"
+                        + "    @WithMockJwtTokenMatrix({@WithMockJwtToken(subject = \"pedro\"), @WithMockJwtToken(subject = \"maria\", expiresAt = \"tomorrow\")})\n"
+                        + "    void matrix() {}\n"
+                        + "}\n");
+
+        assertThat(errors).extracting(error -> error.getMessage(null)).containsExactlyInAnyOrder(
+                "roles cannot start with ROLE_ Got ROLE_ADMIN", "expiresAt must be an ISO-8601 instant Got tomorrow");
+    }
+
+    @Test
+    public void rolePrefixIsACompilationError() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.InvalidRoleTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "@WithMockJwtToken(subject = \"admin\", roles = \"ROLE_ADMIN\")\n"
+                        + "class InvalidRoleTest {}\n");
+
+        assertThat(errors).extracting(error -> error.getMessage(null)).containsExactly("roles cannot start with ROLE_ Got ROLE_ADMIN");
+    }
+
+    @Test
+    public void rolesWithAuthoritiesIsACompilationError() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.InvalidAuthoritiesTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "@WithMockJwtToken(subject = \"admin\", roles = \"ADMIN\", authorities = \"read\")\n"
+                        + "class InvalidAuthoritiesTest {}\n");
+
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0).getMessage(null)).startsWith("You cannot define roles attribute [ADMIN]");
+    }
+
+    @Test
+    public void malformedInstantsAndAlgorithmAreCompilationErrors() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.InvalidValuesTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "@WithMockJwtToken(subject = \"admin\", expiresAt = \"tomorrow\", signatureAlgorithm = \"none\")\n"
+                        + "class InvalidValuesTest {}\n");
+
+        assertThat(errors).extracting(error -> error.getMessage(null))
+                .anyMatch(message -> message.startsWith("expiresAt must be an ISO-8601 instant"))
+                .anyMatch(message -> message.startsWith("Unsupported signature algorithm none"));
+    }
+
+    @Test
+    public void typedClaimsAreValidated() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("example.TypedClaimsTest",
+                "package example;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtToken;\n"
+                        + "import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;\n"
+                        + "class TypedClaimsTest {\n"
+                        + "    @WithMockJwtToken(subject = \"pedro\", additionalClaims = @WithMockJwtTokenClaim(name = \"tenant_ids\", value = \"[1, 2]\", type = WithMockJwtTokenClaim.Type.JSON))\n"
+                        + "    void valid() {}\n"
+                        + "    @WithMockJwtToken(subject = \"pedro\", additionalClaims = @WithMockJwtTokenClaim(name = \"level\", value = \"high\", type = WithMockJwtTokenClaim.Type.NUMBER))\n"
+                        + "    void invalid() {}\n"
+                        + "}\n");
+
+        assertThat(errors).extracting(error -> error.getMessage(null)).containsExactly("Claim level: Expected a JSON value Got high");
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(String className, String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                    "-d", this.output.toString(), "-s", this.output.toString());
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    Collections.singletonList(sourceFile));
+            task.setProcessors(Collections.singletonList(new WithMockJwtTokenProcessor()));
+            task.call();
+        }
+
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .collect(Collectors.toList());
+    }
+}
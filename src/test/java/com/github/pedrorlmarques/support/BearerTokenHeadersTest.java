@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+class BearerTokenHeadersTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @AfterEach
+    public void tearDown() {
+        TestSecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void mockMvcRequestCarriesTheBearerToken() {
+        String token = withMockJwtToken(Signed.class);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        WithMockJwtTokenRequestPostProcessors.bearerToken().postProcessRequest(request);
+
+        assertThat(request.getHeader(HttpHeaders.AUTHORIZATION)).isEqualTo("Bearer " + token);
+        assertThat(MockJwtTokenKeys.jwtDecoder().decode(token).getSubject()).isEqualTo("pedro");
+    }
+
+    @Test
+    public void headerIsBuiltOncePerIdentity() {
+        withMockJwtToken(Signed.class);
+
+        assertThat(BearerTokenHeaders.current()).isSameAs(BearerTokenHeaders.current());
+    }
+
+    @Test
+    public void webTestClientRequestCarriesTheBearerToken() {
+        String token = withMockJwtToken(Signed.class);
+        WebTestClient webTestClient = WebTestClient
+                .bindToRouterFunction(RouterFunctions.route(GET("/authorization"), request -> ServerResponse.ok()
+                        .bodyValue(request.headers().firstHeader(HttpHeaders.AUTHORIZATION))))
+                .build();
+
+        webTestClient.mutateWith(WithMockJwtTokenWebTestClientConfigurers.bearerToken())
+                .get().uri("/authorization")
+                .exchange()
+                .expectBody(String.class).isEqualTo("Bearer " + token);
+    }
+
+    @Test
+    public void tokenSignedWithARetiredKeyIsSignedAgain() {
+        String token = withMockJwtToken(Signed.class);
+        MockJwtTokenKeys.rotate();
+        MockJwtTokenKeys.rotate();
+
+        String header = BearerTokenHeaders.current();
+
+        assertThat(header).isNotEqualTo("Bearer " + token);
+        assertThat(MockJwtTokenKeys.jwtDecoder().decode(header.substring("Bearer ".length())).getSubject())
+                .isEqualTo("pedro");
+        assertThat(new MockJwtTokenDecoder().decode(header.substring("Bearer ".length())).getSubject()).isEqualTo("pedro");
+        assertThat(BearerTokenHeaders.current()).isSameAs(header);
+    }
+
+    @Test
+    public void missingIdentityIsRejected() {
+        assertThatIllegalStateException()
+                .isThrownBy(() -> WithMockJwtTokenRequestPostProcessors.bearerToken().postProcessRequest(new MockHttpServletRequest()))
+                .withMessageStartingWith("Expected a JwtAuthenticationToken");
+    }
+
+    private String withMockJwtToken(Class<?> annotated) {
+        TestSecurityContextHolder.setContext(this.factory.createSecurityContext(annotated.getAnnotation(WithMockJwtToken.class)));
+        return ((JwtAuthenticationToken) TestSecurityContextHolder.getContext().getAuthentication()).getToken().getTokenValue();
+    }
+
+    @WithMockJwtToken(subject = "pedro", signatureAlgorithm = "RS256")
+    static class Signed {
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockOpaqueToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.NimbusOpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class MockIntrospectionServerTest {
+
+    private final WithMockOpaqueTokenSecurityContextFactory factory = new WithMockOpaqueTokenSecurityContextFactory();
+
+    private MockIntrospectionServer introspectionServer;
+
+    private OpaqueTokenIntrospector introspector;
+
+    @BeforeEach
+    public void setup() {
+        this.introspectionServer = MockIntrospectionServer.start();
+        this.introspector = new NimbusOpaqueTokenIntrospector(this.introspectionServer.getIntrospectionUri(),
+                "client", "secret");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.introspectionServer.close();
+    }
+
+    @Test
+    public void introspectorResolvesTheIdentity() {
+        String token = opaqueToken();
+
+        OAuth2AuthenticatedPrincipal principal = this.introspector.introspect(token);
+
+        assertThat(principal.getName()).isEqualTo("pedro");
+        assertThat(principal.<List<String>>getAttribute("scope")).containsExactly("read", "write");
+        assertThat(principal.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyInAnyOrder("SCOPE_read", "SCOPE_write");
+        assertThat(principal.<Instant>getAttribute("exp")).isEqualTo(Instant.parse("2100-01-01T00:00:00Z"));
+        assertThat(this.introspectionServer.getRequestCount()).isEqualTo(1);
+        assertThat(this.introspectionServer.getActiveCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void unknownTokenIsInactive() {
+        assertThatExceptionOfType(BadOpaqueTokenException.class)
+                .isThrownBy(() -> this.introspector.introspect("unknown"));
+        assertThat(this.introspectionServer.getActiveCount()).isZero();
+    }
+
+    @Test
+    public void responsesAreDelayed() {
+        String token = opaqueToken();
+        this.introspectionServer.latency(Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        this.introspector.introspect(token);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void cachingIntrospectorCallsTheServerOncePerTimeToLive() {
+        String token = opaqueToken();
+        Instant now = Instant.parse("2030-01-01T00:00:00Z");
+        CachingOpaqueTokenIntrospector cachingIntrospector = new CachingOpaqueTokenIntrospector(this.introspector,
+                Duration.ofMinutes(5));
+        cachingIntrospector.setClock(Clock.fixed(now, ZoneOffset.UTC));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(cachingIntrospector.introspect(token).getName()).isEqualTo("pedro");
+        }
+        assertThat(this.introspectionServer.getRequestCount()).isEqualTo(1);
+        assertThat(cachingIntrospector.getHitCount()).isEqualTo(99);
+
+        cachingIntrospector.setClock(Clock.fixed(now.plus(Duration.ofMinutes(5)), ZoneOffset.UTC));
+        cachingIntrospector.introspect(token);
+
+        assertThat(this.introspectionServer.getRequestCount()).isEqualTo(2);
+        assertThat(cachingIntrospector.getMissCount()).isEqualTo(2);
+        assertThat(cachingIntrospector.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cachingIntrospectorDoesNotOutliveTheToken() {
+        String token = opaqueToken();
+        Instant expiresAt = Instant.parse("2100-01-01T00:00:00Z");
+        CachingOpaqueTokenIntrospector cachingIntrospector = new CachingOpaqueTokenIntrospector(this.introspector,
+                Duration.ofDays(1));
+        cachingIntrospector.setClock(Clock.fixed(expiresAt.minusSeconds(1), ZoneOffset.UTC));
+        cachingIntrospector.introspect(token);
+
+        cachingIntrospector.setClock(Clock.fixed(expiresAt, ZoneOffset.UTC));
+        cachingIntrospector.introspect(token);
+
+        assertThat(cachingIntrospector.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void cachingIntrospectorIsBounded() {
+        CachingOpaqueTokenIntrospector cachingIntrospector = new CachingOpaqueTokenIntrospector(
+                token -> this.introspector.introspect(opaqueToken()), Duration.ofMinutes(5));
+        cachingIntrospector.setMaximumSize(2);
+
+        cachingIntrospector.introspect("first");
+        cachingIntrospector.introspect("second");
+        cachingIntrospector.introspect("third");
+        cachingIntrospector.introspect("first");
+
+        assertThat(cachingIntrospector.getMissCount()).isEqualTo(4);
+        assertThat(cachingIntrospector.getEvictionCount()).isEqualTo(2);
+    }
+
+    private String opaqueToken() {
+        return ((BearerTokenAuthentication) this.factory.createSecurityContext(
+                Pedro.class.getAnnotation(WithMockOpaqueToken.class)).getAuthentication()).getToken().getTokenValue();
+    }
+
+    @WithMockOpaqueToken(subject = "pedro", scope = {"read", "write"}, expiresAt = "2100-01-01T00:00:00Z")
+    static class Pedro {
+    }
+}
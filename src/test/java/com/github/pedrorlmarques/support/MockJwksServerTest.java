@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class MockJwksServerTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    private MockJwksServer jwksServer;
+
+    @BeforeEach
+    public void setup() {
+        this.jwksServer = MockJwksServer.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.jwksServer.close();
+    }
+
+    @Test
+    public void decoderCachesTheJwkSet() {
+        JwtDecoder jwtDecoder = NimbusJwtDecoder.withJwkSetUri(this.jwksServer.getJwkSetUri()).build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(jwtDecoder.decode(signedToken("user-" + i)).getSubject()).isEqualTo("user-" + i);
+        }
+
+        assertThat(this.jwksServer.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void decoderRefetchesAfterRotation() {
+        JwtDecoder jwtDecoder = NimbusJwtDecoder.withJwkSetUri(this.jwksServer.getJwkSetUri()).build();
+        String before = signedToken("before-rotation");
+        assertThat(jwtDecoder.decode(before).getSubject()).isEqualTo("before-rotation");
+
+        this.jwksServer.rotateKeys();
+        String after = signedToken("after-rotation");
+
+        assertThat(jwtDecoder.decode(after).getSubject()).isEqualTo("after-rotation");
+        assertThat(jwtDecoder.decode(before).getSubject()).isEqualTo("before-rotation");
+        assertThat(this.jwksServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void cachedIdentitiesAreSignedAgainAfterEachRotation() {
+        String first = signedToken("rotated");
+        this.jwksServer.rotateKeys();
+        String second = signedToken("rotated");
+        this.jwksServer.rotateKeys();
+        String third = signedToken("rotated");
+        JwtDecoder jwtDecoder = NimbusJwtDecoder.withJwkSetUri(this.jwksServer.getJwkSetUri()).build();
+
+        assertThat(second).isNotEqualTo(first);
+        assertThat(third).isNotEqualTo(second);
+        assertThat(jwtDecoder.decode(third).getSubject()).isEqualTo("rotated");
+        assertThat(jwtDecoder.decode(second).getSubject()).isEqualTo("rotated");
+        // the key of the first token was retired two rotations ago
+        assertThatExceptionOfType(JwtException.class).isThrownBy(() -> jwtDecoder.decode(first));
+        assertThatExceptionOfType(JwtException.class).isThrownBy(() -> new MockJwtTokenDecoder().decode(first))
+                .withMessage("The token is signed with a key retired by MockJwtTokenKeys.rotate()");
+        assertThat(new MockJwtTokenDecoder().decode(second).getSubject()).isEqualTo("rotated");
+    }
+
+    @Test
+    public void conditionalRequestIsNotModified() throws Exception {
+        signedToken("pedro");
+        this.jwksServer.cacheControl("max-age=60, must-revalidate");
+        HttpClient httpClient = HttpClient.newHttpClient();
+
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(this.jwksServer.getJwkSetUri())).build(),
+                HttpResponse.BodyHandlers.ofString());
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> conditional = httpClient.send(HttpRequest.newBuilder(URI.create(this.jwksServer.getJwkSetUri()))
+                .header("If-None-Match", etag).build(), HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Cache-Control")).hasValue("max-age=60, must-revalidate");
+        assertThat(response.body()).contains("\"kty\":\"RSA\"").doesNotContain("\"d\":");
+        assertThat(conditional.statusCode()).isEqualTo(304);
+        assertThat(this.jwksServer.getRequestCount()).isEqualTo(2);
+        assertThat(this.jwksServer.getNotModifiedCount()).isEqualTo(1);
+    }
+
+    private String signedToken(String subject) {
+        WithMockJwtToken withMockJwtToken = MergedAnnotation.of(WithMockJwtToken.class,
+                Map.of("subject", subject, "signatureAlgorithm", "RS256")).synthesize();
+        return ((JwtAuthenticationToken) this.factory.createSecurityContext(withMockJwtToken).getAuthentication())
+                .getToken().getTokenValue();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pedrorlmarques.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class MockJwtTokenCacheTest {
+
+    @Test
+    public void slowMissBlocksNeitherHitsNorOtherMisses() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MockJwtTokenCache<String, String> cache = new MockJwtTokenCache<>(2, key -> {
+            if (key.equals("slow")) {
+                building.countDown();
+                await(release);
+            }
+            return key.toUpperCase();
+        });
+        assertThat(cache.get("hit")).isEqualTo("HIT");
+
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> cache.get("slow"));
+        try {
+            assertThat(building.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(CompletableFuture.supplyAsync(() -> cache.get("hit")).get(5, TimeUnit.SECONDS)).isEqualTo("HIT");
+            assertThat(CompletableFuture.supplyAsync(() -> cache.get("miss")).get(5, TimeUnit.SECONDS)).isEqualTo("MISS");
+        } finally {
+            release.countDown();
+        }
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("SLOW");
+    }
+
+    @Test
+    public void eachKeyIsBuiltOnce() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        MockJwtTokenCache<Integer, Integer> cache = new MockJwtTokenCache<>(16, key -> {
+            builds.incrementAndGet();
+            return key;
+        });
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<Integer> future : executorService.invokeAll(IntStream.range(0, 800)
+                    .mapToObj(i -> (Callable<Integer>) () -> cache.get(i % 8))
+                    .collect(Collectors.toList()))) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertThat(builds).hasValue(8);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        MockJwtTokenCache<String, String> cache = new MockJwtTokenCache<>(2, String::toUpperCase);
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+
+        cache.get("b");
+        cache.get("d");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.contains("b")).isTrue();
+        assertThat(cache.contains("c")).isFalse();
+        assertThat(cache.contains("d")).isTrue();
+    }
+
+    @Test
+    public void failedBuildIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        MockJwtTokenCache<String, String> cache = new MockJwtTokenCache<>(2, key -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt");
+            }
+            return key;
+        });
+
+        assertThatIllegalStateException().isThrownBy(() -> cache.get("a")).withMessage("first attempt");
+        assertThat(cache.contains("a")).isFalse();
+        assertThat(cache.get("a")).isEqualTo("a");
+    }
+
+    @Test
+    public void registeredValuesAreMergedAndBounded() {
+        MockJwtTokenCache<String, String> cache = new MockJwtTokenCache<>(2);
+        cache.put("a", "first");
+        cache.merge("a", "second", (previous, current) -> previous + "," + current);
+        cache.put("b", "b");
+
+        assertThat(cache.find("a")).isEqualTo("first,second");
+        cache.put("c", "c");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.find("a")).isEqualTo("first,second");
+        assertThat(cache.find("b")).isNull();
+        assertThatIllegalStateException().isThrownBy(() -> cache.get("b"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
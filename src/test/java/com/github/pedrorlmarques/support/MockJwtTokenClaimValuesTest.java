@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MockJwtTokenClaimValuesTest {
+
+    @Test
+    public void stringIsUsedAsIs() {
+        assertThat(MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.STRING, "42")).isEqualTo("42");
+        assertThat(MockJwtTokenClaimValues.parse(null, "42")).isEqualTo("42");
+    }
+
+    @Test
+    public void numbersAndBooleansAreParsed() {
+        assertThat(MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.NUMBER, "42")).isEqualTo(42L);
+        assertThat(MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.NUMBER, "4.2")).isEqualTo(4.2d);
+        assertThat(MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.BOOLEAN, "true")).isEqualTo(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void jsonIsParsedOnceAsImmutableStructures() {
+        Object parsed = MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.JSON, "{\"roles\": [\"admin\", \"user\"], \"level\": 3}");
+
+        assertThat(parsed).isEqualTo(Map.of("roles", List.of("admin", "user"), "level", 3L));
+        assertThat(MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.JSON, "{\"roles\": [\"admin\", \"user\"], \"level\": 3}"))
+                .isSameAs(parsed);
+        Map<String, Object> realmAccess = (Map<String, Object>) parsed;
+        assertThatThrownBy(() -> realmAccess.put("other", "value")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> ((List<Object>) realmAccess.get("roles")).add("other"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void invalidValuesAreRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.NUMBER, "\"42\""))
+                .withMessage("Expected a JSON number Got \"42\"");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.JSON, "[1, 2"))
+                .withMessage("Expected a JSON value Got [1, 2");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MockJwtTokenClaimValues.parse(WithMockJwtTokenClaim.Type.JSON, "1, \"other\": 2"))
+                .withMessage("Expected a JSON value Got 1, \"other\": 2");
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MockJwtTokenClockTest {
+
+    private static final Instant NOW = Instant.parse("2030-01-01T10:00:00Z");
+
+    private final MockJwtTokenClock clock = MockJwtTokenClock.get();
+
+    @AfterEach
+    public void tearDown() {
+        this.clock.reset();
+    }
+
+    @Test
+    public void relativeExpirationIsResolvedAgainstTheClock() {
+        this.clock.setInstant(NOW);
+
+        JwtAuthenticationToken authentication = authentication(ExpiresIn5Minutes.class);
+
+        assertThat(authentication.getToken().getIssuedAt()).isEqualTo(NOW);
+        assertThat(authentication.getToken().getExpiresAt()).isEqualTo(NOW.plus(Duration.ofMinutes(5)));
+        assertThat(authentication(ExpiresIn5Minutes.class)).isSameAs(authentication);
+    }
+
+    @Test
+    public void relativeExpirationIsTimedAgainOnceTheClockMoved() {
+        WithMockJwtToken withMockJwtToken = ExpiresIn5Minutes.class.getAnnotation(WithMockJwtToken.class);
+        this.clock.setInstant(NOW);
+        JwtAuthenticationToken first = authentication(ExpiresIn5Minutes.class);
+
+        this.clock.advance(Duration.ofSeconds(1));
+        assertThat(WithMockJwtTokenSecurityContextFactory.isCached(withMockJwtToken)).isFalse();
+        JwtAuthenticationToken second = authentication(ExpiresIn5Minutes.class);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getToken().getExpiresAt()).isEqualTo(NOW.plus(Duration.ofMinutes(5)).plusSeconds(1));
+        assertThat(WithMockJwtTokenSecurityContextFactory.isCached(withMockJwtToken)).isTrue();
+        assertThat(authentication(ExpiresIn5Minutes.class)).isSameAs(second);
+    }
+
+    @Test
+    public void advancingTheClockExpiresTheToken() {
+        this.clock.setInstant(NOW);
+        Jwt jwt = authentication(ExpiresIn5Minutes.class).getToken();
+        MockJwtTokenDecoder decoder = new MockJwtTokenDecoder();
+        assertThat(decoder.decode(jwt.getTokenValue())).isSameAs(jwt);
+
+        this.clock.advance(Duration.ofMinutes(6));
+
+        assertThatThrownBy(() -> decoder.decode(jwt.getTokenValue())).isInstanceOf(JwtValidationException.class);
+        assertThatThrownBy(() -> MockJwtTokenKeys.jwtDecoder().decode(jwt.getTokenValue()))
+                .isInstanceOf(JwtValidationException.class);
+    }
+
+    @Test
+    public void clockFollowsTheSystemClockAfterReset() {
+        this.clock.setInstant(NOW);
+        this.clock.reset();
+
+        assertThat(Duration.between(this.clock.instant(), Instant.now()).abs()).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void relativeExpirationIsReusedUntilHalfOfItsLifetimeUnderTheSystemClock() {
+        WithMockJwtTokenAttributes attributes = WithMockJwtTokenAttributes.builder().subject("pedro").expiresIn("PT10M").build();
+        Instant now = this.clock.instant().truncatedTo(ChronoUnit.SECONDS);
+
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(10)), this.clock)).isTrue();
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(6)), this.clock)).isTrue();
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(4)), this.clock)).isFalse();
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(11)), this.clock)).isFalse();
+
+        this.clock.setInstant(now);
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(10)), this.clock)).isTrue();
+        assertThat(attributes.isResolved(now.plus(Duration.ofMinutes(6)), this.clock)).isFalse();
+    }
+
+    @Test
+    public void movedTimeIsScopedToTheThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+            }).get();
+
+            this.clock.setInstant(NOW);
+
+            assertThat(this.clock.instant()).isEqualTo(NOW);
+            assertThat(executor.submit(() -> this.clock.isMoved()).get()).isFalse();
+            assertThat(executor.submit(this.clock::instant).get()).isNotEqualTo(NOW);
+
+            CompletableFuture<Instant> started = new CompletableFuture<>();
+            Thread thread = new Thread(() -> started.complete(this.clock.instant()));
+            thread.start();
+            assertThat(started.get(10, TimeUnit.SECONDS)).isEqualTo(NOW);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void absoluteAndRelativeExpirationCannotBeCombined() {
+        assertThatIllegalStateException()
+                .isThrownBy(() -> WithMockJwtTokenAttributes.builder().subject("pedro")
+                        .expiresAt("2100-01-01T00:00:00Z").expiresIn("PT5M").build())
+                .withMessage("You cannot define expiresAt attribute 2100-01-01T00:00:00Z with expiresIn attribute PT5M");
+    }
+
+    private JwtAuthenticationToken authentication(Class<?> annotated) {
+        return WithMockJwtTokenSecurityContextFactory.getAuthentication(annotated.getAnnotation(WithMockJwtToken.class));
+    }
+
+    @WithMockJwtToken(subject = "pedro", expiresIn = "PT5M", signatureAlgorithm = "HS256")
+    static class ExpiresIn5Minutes {
+    }
+}
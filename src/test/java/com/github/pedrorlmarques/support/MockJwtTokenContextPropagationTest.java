@@ -0,0 +1,289 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MockJwtTokenContextPropagationTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @AfterEach
+    public void tearDown() {
+        TestSecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void pooledThreadsRunWithTheSubmittingIdentity() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // the worker thread is created before any identity is set
+            pool.submit(() -> { }).get();
+            ExecutorService executorService = MockJwtTokenContextPropagation.wrap(pool);
+
+            Authentication pedro = withMockJwtToken(Pedro.class);
+            assertThat(executorService.submit(MockJwtTokenContextPropagationTest::currentAuthentication).get())
+                    .isSameAs(pedro);
+
+            Authentication maria = withMockJwtToken(Maria.class);
+            assertThat(executorService.submit(MockJwtTokenContextPropagationTest::currentAuthentication).get())
+                    .isSameAs(maria);
+
+            // the context of the worker is cleared once the task is done
+            assertThat(pool.submit(MockJwtTokenContextPropagationTest::currentAuthentication).get()).isNull();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void taskDecoratorPropagatesTheIdentity() throws Exception {
+        Authentication pedro = withMockJwtToken(Pedro.class);
+        AtomicReference<Authentication> seen = new AtomicReference<>();
+        Runnable task = MockJwtTokenContextPropagation.taskDecorator()
+                .decorate(() -> seen.set(currentAuthentication()));
+
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+
+        assertThat(seen).hasValue(pedro);
+    }
+
+    @Test
+    public void propagatingDecoratorsAreNotWrappedAgain() {
+        TaskDecorator taskDecorator = MockJwtTokenContextPropagation.taskDecorator(runnable -> runnable);
+        Runnable task = taskDecorator.decorate(() -> { });
+
+        assertThat(MockJwtTokenContextPropagation.taskDecorator(taskDecorator)).isSameAs(taskDecorator);
+        assertThat(task).isInstanceOf(DelegatingSecurityContextRunnable.class);
+        assertThat(taskDecorator.decorate(task)).isSameAs(task);
+        assertThat(MockJwtTokenContextPropagation.taskDecorator().decorate(task)).isSameAs(task);
+    }
+
+    @Test
+    public void executorsKeepTheirDecoratorAndCaptureOnce() throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                MockJwtTokenContextPropagationConfiguration.class, DecoratedExecutorConfiguration.class)) {
+            ThreadPoolTaskExecutor taskExecutor = context.getBean(ThreadPoolTaskExecutor.class);
+            DecoratedExecutorConfiguration.decorated.set(null);
+            Authentication pedro = withMockJwtToken(Pedro.class);
+
+            AtomicReference<Authentication> seen = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(1);
+
+            taskExecutor.execute(() -> {
+                seen.set(currentAuthentication());
+                done.countDown();
+            });
+            done.await();
+
+            assertThat(seen).hasValue(pedro);
+            // captured by the executor, the propagating decorator bean only applies the decorator of the application
+            assertThat(DecoratedExecutorConfiguration.decorated.get())
+                    .isInstanceOf(DelegatingSecurityContextRunnable.class);
+            assertThat(taskExecutor.submit(MockJwtTokenContextPropagationTest::currentAuthentication).get())
+                    .isSameAs(pedro);
+            assertThat(MockJwtTokenContextPropagation.isPropagating(context.getBean(TaskDecorator.class))).isTrue();
+        }
+    }
+
+    @Test
+    public void beansPropagateTheIdentity() throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                MockJwtTokenContextPropagationConfiguration.class, ExecutorConfiguration.class)) {
+            ExecutorService executorService = context.getBean(ExecutorService.class);
+            TaskDecorator taskDecorator = context.getBean(TaskDecorator.class);
+            Authentication pedro = withMockJwtToken(Pedro.class);
+            AtomicReference<Authentication> seen = new AtomicReference<>();
+
+            try {
+                assertThat(executorService).isInstanceOf(DelegatingSecurityContextExecutorService.class);
+                assertThat(executorService.submit(MockJwtTokenContextPropagationTest::currentAuthentication).get())
+                        .isSameAs(pedro);
+
+                Thread thread = new Thread(taskDecorator.decorate(() -> seen.set(currentAuthentication())));
+                thread.start();
+                thread.join();
+                assertThat(seen).hasValue(pedro);
+            } finally {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void asyncMethodsRunWithTheCallingIdentity() throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                MockJwtTokenContextPropagationConfiguration.class, AsyncConfiguration.class)) {
+            AsyncService asyncService = context.getBean(AsyncService.class);
+
+            // the worker thread is created before any identity is set
+            assertThat(asyncService.currentAuthentication().get()).isNull();
+
+            Authentication pedro = withMockJwtToken(Pedro.class);
+            assertThat(asyncService.currentAuthentication().get()).isSameAs(pedro);
+            assertThat(context.getBean(ThreadPoolTaskExecutor.class).getThreadPoolExecutor().getPoolSize()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void concreteExecutorBeansKeepTheirType() throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                MockJwtTokenContextPropagationConfiguration.class, ConcreteExecutorConfiguration.class)) {
+            ThreadPoolExecutor threadPoolExecutor = context.getBean(ThreadPoolExecutor.class);
+            Executor executor = context.getBean("executor", Executor.class);
+            Authentication pedro = withMockJwtToken(Pedro.class);
+            AtomicReference<Authentication> seen = new AtomicReference<>();
+
+            try {
+                assertThat(threadPoolExecutor).isNotInstanceOf(DelegatingSecurityContextExecutorService.class);
+                assertThat(executor).isInstanceOf(DelegatingSecurityContextExecutor.class);
+
+                CountDownLatch done = new CountDownLatch(1);
+                executor.execute(() -> {
+                    seen.set(currentAuthentication());
+                    done.countDown();
+                });
+                done.await();
+                assertThat(seen).hasValue(pedro);
+            } finally {
+                threadPoolExecutor.shutdown();
+            }
+        }
+    }
+
+    private static Authentication currentAuthentication() {
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private Authentication withMockJwtToken(Class<?> annotated) {
+        TestSecurityContextHolder.setContext(this.factory.createSecurityContext(
+                annotated.getAnnotation(WithMockJwtToken.class)));
+        return TestSecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @WithMockJwtToken(subject = "pedro")
+    private static class Pedro {
+    }
+
+    @WithMockJwtToken(subject = "maria")
+    private static class Maria {
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ExecutorConfiguration {
+
+        @Bean(destroyMethod = "")
+        ExecutorService executorService() {
+            return Executors.newFixedThreadPool(2);
+        }
+
+        @Bean
+        TaskDecorator taskDecorator() {
+            return runnable -> runnable;
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class DecoratedExecutorConfiguration {
+
+        // the task handed to the decorator of the executor
+        static final AtomicReference<Runnable> decorated = new AtomicReference<>();
+
+        @Bean
+        TaskDecorator taskDecorator() {
+            return runnable -> {
+                decorated.set(runnable);
+                return runnable;
+            };
+        }
+
+        @Bean
+        ThreadPoolTaskExecutor taskExecutor(TaskDecorator taskDecorator) {
+            ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+            taskExecutor.setCorePoolSize(1);
+            taskExecutor.setTaskDecorator(taskDecorator);
+            return taskExecutor;
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableAsync
+    static class AsyncConfiguration {
+
+        @Bean
+        ThreadPoolTaskExecutor taskExecutor() {
+            ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+            taskExecutor.setCorePoolSize(1);
+            taskExecutor.setMaxPoolSize(1);
+            return taskExecutor;
+        }
+
+        @Bean
+        AsyncService asyncService() {
+            return new AsyncService();
+        }
+    }
+
+    static class AsyncService {
+
+        @Async
+        public CompletableFuture<Authentication> currentAuthentication() {
+            return CompletableFuture.completedFuture(MockJwtTokenContextPropagationTest.currentAuthentication());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ConcreteExecutorConfiguration {
+
+        @Bean(destroyMethod = "")
+        ThreadPoolExecutor threadPoolExecutor() {
+            return (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        }
+
+        @Bean
+        Executor executor(ThreadPoolExecutor threadPoolExecutor) {
+            return threadPoolExecutor::execute;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.generator.MockJwtTokenGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MockJwtTokenDecoderTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @AfterEach
+    public void tearDown() {
+        TestSecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void mintedTokenIsReturnedFromMemory() {
+        MockJwtTokenDecoder decoder = new MockJwtTokenDecoder();
+        Jwt jwt = jwt(Signed.class);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(decoder.decode(jwt.getTokenValue())).isSameAs(jwt);
+        }
+
+        assertThat(decoder.getHitCount()).isEqualTo(100);
+        assertThat(decoder.getMissCount()).isZero();
+    }
+
+    @Test
+    public void unknownTokenIsHandedToTheFallback() {
+        MockJwtTokenDecoder decoder = new MockJwtTokenDecoder(MockJwtTokenKeys.jwtDecoder());
+        String token = MockJwtTokenGenerator.builder().subject("generated-{n}").build().mint(7);
+
+        assertThat(decoder.decode(token).getSubject()).isEqualTo("generated-7");
+        assertThat(decoder.getHitCount()).isZero();
+        assertThat(decoder.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void sharedUnsignedTokenResolvesToTheCurrentIdentity() {
+        MockJwtTokenDecoder decoder = new MockJwtTokenDecoder();
+        Jwt pedro = jwt(Pedro.class);
+        Jwt admin = jwt(Admin.class);
+        assertThat(pedro.getTokenValue()).isEqualTo(admin.getTokenValue());
+
+        assertThatThrownBy(() -> decoder.decode(pedro.getTokenValue()))
+                .isInstanceOf(BadJwtException.class)
+                .hasMessageStartingWith("The token is shared by several @WithMockJwtToken identities");
+
+        TestSecurityContextHolder.setContext(securityContext(Admin.class));
+        assertThat(decoder.decode(admin.getTokenValue())).isSameAs(admin);
+    }
+
+    @Test
+    public void expiredTokenIsRejected() {
+        MockJwtTokenDecoder decoder = new MockJwtTokenDecoder();
+        Jwt jwt = jwt(Expired.class);
+
+        assertThatThrownBy(() -> decoder.decode(jwt.getTokenValue())).isInstanceOf(JwtValidationException.class);
+    }
+
+    private Jwt jwt(Class<?> annotated) {
+        return ((JwtAuthenticationToken) securityContext(annotated).getAuthentication()).getToken();
+    }
+
+    private SecurityContext securityContext(Class<?> annotated) {
+        return this.factory.createSecurityContext(annotated.getAnnotation(WithMockJwtToken.class));
+    }
+
+    @WithMockJwtToken(subject = "decoded", signatureAlgorithm = "HS256")
+    static class Signed {
+    }
+
+    @WithMockJwtToken(subject = "expired", signatureAlgorithm = "HS256", expiresAt = "2020-01-01T00:00:00Z")
+    static class Expired {
+    }
+
+    @WithMockJwtToken(subject = "pedro")
+    static class Pedro {
+    }
+
+    @WithMockJwtToken(subject = "admin", roles = "ADMIN")
+    static class Admin {
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class MockJwtTokenFixtureFilesTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @Test
+    public void fixtureIsParsedOnce() {
+        Map<String, Object> claims = MockJwtTokenFixtureFiles.claims("admin");
+
+        assertThat(claims).containsEntry("sub", "admin").containsEntry("tenant_ids", List.of(1L, 2L));
+        assertThat(MockJwtTokenFixtureFiles.claims("admin")).isSameAs(claims);
+    }
+
+    @Test
+    public void fixtureProvidesTheClaims() {
+        Jwt jwt = jwt(Admin.class);
+
+        assertThat(jwt.getSubject()).isEqualTo("admin");
+        assertThat(jwt.getAudience()).containsExactly("account://default");
+        assertThat(jwt.getExpiresAt()).isEqualTo(Instant.parse("2100-01-01T00:00:00Z"));
+        assertThat(jwt.getClaimAsStringList("scope")).containsExactly("read", "write");
+        assertThat(jwt.getClaimAsMap("realm_access")).isEqualTo(Map.of("roles", List.of("admin")));
+    }
+
+    @Test
+    public void annotationAttributesTakePrecedence() {
+        Jwt jwt = jwt(AdminOfAnotherTenant.class);
+
+        assertThat(jwt.getSubject()).isEqualTo("operator");
+        assertThat(jwt.getClaimAsStringList("scope")).containsExactly("read");
+        assertThat(jwt.getClaims()).containsEntry("tenant_ids", List.of(3L));
+        assertThat(jwt.getClaimAsMap("realm_access")).isEqualTo(Map.of("roles", List.of("admin")));
+    }
+
+    @Test
+    public void missingFixtureIsRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MockJwtTokenFixtureFiles.claims("missing"))
+                .withMessage("No fixture missing found at classpath:META-INF/with-mock-jwt-token/missing.json");
+    }
+
+    private Jwt jwt(Class<?> annotated) {
+        return ((JwtAuthenticationToken) this.factory.createSecurityContext(annotated.getAnnotation(WithMockJwtToken.class))
+                .getAuthentication()).getToken();
+    }
+
+    @WithMockJwtToken(fixture = "admin")
+    static class Admin {
+    }
+
+    @WithMockJwtToken(fixture = "admin", subject = "operator", scope = "read",
+            additionalClaims = @WithMockJwtTokenClaim(name = "tenant_ids", value = "[3]", type = WithMockJwtTokenClaim.Type.JSON))
+    static class AdminOfAnotherTenant {
+    }
+}
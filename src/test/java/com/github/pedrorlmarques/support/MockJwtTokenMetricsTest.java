@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+
+class MockJwtTokenMetricsTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    private final MockJwtTokenMetricsTestExecutionListener listener = new MockJwtTokenMetricsTestExecutionListener();
+
+    private final Queue<MockJwtTokenSetup> setups = new ConcurrentLinkedQueue<>();
+
+    private final MockJwtTokenMetricsRecorder recorder = this.setups::add;
+
+    @TempDir
+    Path output;
+
+    @BeforeEach
+    public void setUp() {
+        MockJwtTokenMetrics.addRecorder(this.recorder);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockJwtTokenMetrics.removeRecorder(this.recorder);
+        MockJwtTokenMetrics.clearTestClass();
+    }
+
+    @Test
+    public void setupsAreTaggedWithTheTestClassAndIdentity() {
+        TestContext testContext = new TestContextManager(Measured.class).getTestContext();
+        WithMockJwtToken withMockJwtToken = Measured.class.getAnnotation(WithMockJwtToken.class);
+
+        this.listener.beforeTestMethod(testContext);
+        this.factory.createSecurityContext(withMockJwtToken);
+        this.factory.createSecurityContext(withMockJwtToken);
+        this.listener.afterTestMethod(testContext);
+
+        assertThat(this.setups).filteredOn(setup -> "metrics-user".equals(setup.getIdentity()))
+                .hasSize(2)
+                .allSatisfy(setup -> {
+                    assertThat(setup.getTestClass()).isEqualTo(Measured.class.getName());
+                    assertThat(setup.getDurationNanos()).isPositive();
+                })
+                .extracting(MockJwtTokenSetup::isCacheHit)
+                .containsExactly(false, true);
+    }
+
+    @Test
+    public void setupsOutsideOfATestClassAreUnknown() {
+        this.factory.createSecurityContext(Unmeasured.class.getAnnotation(WithMockJwtToken.class));
+
+        assertThat(this.setups).filteredOn(setup -> "unknown-user".equals(setup.getIdentity()))
+                .extracting(MockJwtTokenSetup::getTestClass)
+                .containsOnly(MockJwtTokenSetup.UNKNOWN_TEST_CLASS);
+    }
+
+    @Test
+    public void matrixIdentitiesAreTaggedWithTheirTestClass() throws Exception {
+        ExtensionContext context = mock(ExtensionContext.class);
+        given(context.getRequiredTestMethod()).willReturn(Matrix.class.getDeclaredMethod("test"));
+        willReturn(Matrix.class).given(context).getRequiredTestClass();
+        given(context.getExecutionMode()).willReturn(ExecutionMode.SAME_THREAD);
+
+        assertThat(new WithMockJwtTokenMatrixExtension().provideTestTemplateInvocationContexts(context)).hasSize(2);
+
+        assertThat(this.setups).filteredOn(setup -> setup.getIdentity().startsWith("matrix-"))
+                .hasSize(2)
+                .extracting(MockJwtTokenSetup::getTestClass)
+                .containsOnly(Matrix.class.getName());
+    }
+
+    @Test
+    public void reactorContextsAreTaggedWithTheTestClass() {
+        TestContext testContext = new TestContextManager(Reactive.class).getTestContext();
+        WithMockJwtTokenReactorContextTestExecutionListener reactorListener =
+                new WithMockJwtTokenReactorContextTestExecutionListener();
+        TestSecurityContextHolder.setContext(
+                this.factory.createSecurityContext(Reactive.class.getAnnotation(WithMockJwtToken.class)));
+
+        try {
+            reactorListener.beforeTestMethod(testContext);
+            reactorListener.afterTestMethod(testContext);
+        } finally {
+            TestSecurityContextHolder.clearContext();
+        }
+
+        assertThat(this.setups).filteredOn(setup -> "reactive-user".equals(setup.getIdentity()))
+                .extracting(MockJwtTokenSetup::getTestClass)
+                .containsExactly(MockJwtTokenSetup.UNKNOWN_TEST_CLASS, Reactive.class.getName());
+    }
+
+    @Test
+    public void reportListsTheSlowestFirst() throws Exception {
+        MockJwtTokenMetricsReport report = new MockJwtTokenMetricsReport();
+        report.record(new MockJwtTokenSetup("FastTest", "pedro", 1_000_000, 100, true));
+        report.record(new MockJwtTokenSetup("SlowTest", "maria", 5_000_000, 2000, false));
+        report.record(new MockJwtTokenSetup("SlowTest", "maria", 3_000_000, -1, true));
+        Path file = this.output.resolve("reports/with-mock-jwt-token.tsv");
+
+        report.write(file);
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).isEqualTo(MockJwtTokenMetricsReport.HEADER);
+        assertThat(lines.get(1)).isEqualTo(String.join("\t", "SlowTest", "maria", "2", "1", "1",
+                String.format("%.3f", 8d), String.format("%.3f", 5d), "2000"));
+        assertThat(lines.get(2)).startsWith("FastTest\tpedro\t1\t1\t0\t");
+    }
+
+    @Test
+    public void micrometerRecorderPublishesTaggedMeters() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MicrometerMockJwtTokenMetricsRecorder micrometer = new MicrometerMockJwtTokenMetricsRecorder(meterRegistry);
+
+        micrometer.record(new MockJwtTokenSetup("SlowTest", "maria", 5_000_000, 2000, false));
+
+        assertThat(meterRegistry.get(MicrometerMockJwtTokenMetricsRecorder.SETUP_TIMER)
+                .tags("test.class", "SlowTest", "identity", "maria", "cache", "miss").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MicrometerMockJwtTokenMetricsRecorder.ALLOCATED_SUMMARY)
+                .tags("cache", "miss").summary().totalAmount()).isEqualTo(2000);
+    }
+
+    @WithMockJwtToken(subject = "metrics-user")
+    static class Measured {
+    }
+
+    @WithMockJwtToken(subject = "unknown-user")
+    static class Unmeasured {
+    }
+
+    @WithMockJwtToken(subject = "reactive-user")
+    static class Reactive {
+    }
+
+    static class Matrix {
+
+        @WithMockJwtTokenMatrix({
+                @WithMockJwtToken(subject = "matrix-admin", roles = "ADMIN"),
+                @WithMockJwtToken(subject = "matrix-user")
+        })
+        void test() {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class ThreadScopedSecurityContextHolderStrategyTest {
+
+    private static final int TESTS = 512;
+
+    private static final int THREADS = 32;
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @BeforeAll
+    static void install() {
+        SecurityContextHolder.setStrategyName(ThreadScopedSecurityContextHolderStrategy.class.getName());
+    }
+
+    @AfterAll
+    static void restore() {
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_THREADLOCAL);
+    }
+
+    @Test
+    public void concurrentTestsOnlySeeTheirOwnIdentity() throws Exception {
+        int initializeCount = SecurityContextHolder.getInitializeCount();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < TESTS; i++) {
+                String subject = "user-" + i;
+                boolean inheritable = i % 2 == 0;
+                WithMockJwtToken withMockJwtToken = withMockJwtToken(subject, inheritable
+                        ? SecurityContextHolder.MODE_INHERITABLETHREADLOCAL
+                        : SecurityContextHolder.MODE_THREADLOCAL);
+
+                results.add(executor.submit(() -> {
+                    start.await();
+                    TestSecurityContextHolder.setContext(this.factory.createSecurityContext(withMockJwtToken));
+                    try {
+                        Thread.yield();
+                        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo(subject);
+                        Authentication childAuthentication = authenticationSeenByChildThread();
+                        if (inheritable) {
+                            assertThat(childAuthentication.getName()).isEqualTo(subject);
+                        } else {
+                            assertThat(childAuthentication).isNull();
+                        }
+                        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo(subject);
+                    } finally {
+                        TestSecurityContextHolder.clearContext();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(SecurityContextHolder.getContextHolderStrategy()).isInstanceOf(ThreadScopedSecurityContextHolderStrategy.class);
+        assertThat(SecurityContextHolder.getInitializeCount()).isEqualTo(initializeCount);
+    }
+
+    @Test
+    public void globalModeIsRejected() {
+        WithMockJwtToken withMockJwtToken = withMockJwtToken("pedro", SecurityContextHolder.MODE_GLOBAL);
+
+        assertThatIllegalStateException().isThrownBy(() -> this.factory.createSecurityContext(withMockJwtToken));
+    }
+
+    private static Authentication authenticationSeenByChildThread() throws InterruptedException {
+        AtomicReference<Authentication> authentication = new AtomicReference<>();
+        Thread child = new Thread(() -> authentication.set(SecurityContextHolder.getContext().getAuthentication()));
+        child.start();
+        child.join();
+        return authentication.get();
+    }
+
+    private static WithMockJwtToken withMockJwtToken(String subject, String securityStrategyName) {
+        return MergedAnnotation.of(WithMockJwtToken.class,
+                Map.of("subject", subject, "securityStrategyName", securityStrategyName)).synthesize();
+    }
+}
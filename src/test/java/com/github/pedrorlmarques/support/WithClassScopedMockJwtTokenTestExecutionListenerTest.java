@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithClassScopedMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WithClassScopedMockJwtTokenTestExecutionListenerTest {
+
+    private final WithClassScopedMockJwtTokenTestExecutionListener listener =
+            new WithClassScopedMockJwtTokenTestExecutionListener();
+
+    @Test
+    public void authenticationIsBuiltOncePerClass() {
+        TestContext testContext = new TestContextManager(ClassScoped.class).getTestContext();
+
+        this.listener.beforeTestClass(testContext);
+        JwtAuthenticationToken beforeAll = (JwtAuthenticationToken) TestSecurityContextHolder.getContext().getAuthentication();
+
+        this.listener.beforeTestMethod(testContext);
+        SecurityContext first = TestSecurityContextHolder.getContext();
+        this.listener.afterTestMethod(testContext);
+        this.listener.beforeTestMethod(testContext);
+        SecurityContext second = TestSecurityContextHolder.getContext();
+        this.listener.afterTestMethod(testContext);
+
+        assertThat(beforeAll.getName()).isEqualTo("pedro");
+        assertThat(beforeAll.getAuthorities()).extracting("authority").containsExactly("ROLE_ADMIN");
+        assertThat(first).isNotSameAs(second);
+        assertThat(first.getAuthentication()).isSameAs(beforeAll);
+        assertThat(second.getAuthentication()).isSameAs(beforeAll);
+
+        this.listener.afterTestClass(testContext);
+        assertThat(TestSecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(testContext.hasAttribute(WithClassScopedMockJwtTokenTestExecutionListener.AUTHENTICATION_ATTRIBUTE)).isFalse();
+    }
+
+    @Test
+    public void classWithoutAnnotationIsIgnored() {
+        TestContext testContext = new TestContextManager(NotClassScoped.class).getTestContext();
+        TestSecurityContextHolder.clearContext();
+
+        this.listener.beforeTestClass(testContext);
+        this.listener.beforeTestMethod(testContext);
+
+        assertThat(TestSecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    public void authoritiesAreConvertedByTheConverterBeanOfTheTest() {
+        TestContext testContext = new TestContextManager(ConvertedClassScoped.class).getTestContext();
+
+        this.listener.beforeTestClass(testContext);
+        try {
+            assertThat(TestSecurityContextHolder.getContext().getAuthentication().getAuthorities())
+                    .extracting("authority").containsExactly("PERM_read");
+        } finally {
+            this.listener.afterTestClass(testContext);
+        }
+    }
+
+    @Test
+    public void authenticationIsSignedAgainAfterARotation() {
+        TestContext testContext = new TestContextManager(SignedClassScoped.class).getTestContext();
+
+        this.listener.beforeTestClass(testContext);
+        try {
+            JwtAuthenticationToken beforeAll = (JwtAuthenticationToken) TestSecurityContextHolder.getContext().getAuthentication();
+            MockJwtTokenKeys.rotate();
+            MockJwtTokenKeys.rotate();
+
+            this.listener.beforeTestMethod(testContext);
+            JwtAuthenticationToken rotated = (JwtAuthenticationToken) TestSecurityContextHolder.getContext().getAuthentication();
+            this.listener.afterTestMethod(testContext);
+
+            assertThat(rotated.getToken().getTokenValue()).isNotEqualTo(beforeAll.getToken().getTokenValue());
+            assertThat(MockJwtTokenKeys.jwtDecoder().decode(rotated.getToken().getTokenValue()).getSubject())
+                    .isEqualTo("pedro");
+        } finally {
+            this.listener.afterTestClass(testContext);
+        }
+    }
+
+    @WithClassScopedMockJwtToken(@WithMockJwtToken(subject = "pedro", roles = "ADMIN"))
+    static class ClassScoped {
+    }
+
+    @WithClassScopedMockJwtToken(@WithMockJwtToken(subject = "pedro", signatureAlgorithm = "HS256"))
+    static class SignedClassScoped {
+    }
+
+    static class NotClassScoped {
+    }
+
+    @WithClassScopedMockJwtToken(@WithMockJwtToken(subject = "pedro", scope = "read", roles = "ADMIN",
+            convertAuthorities = true))
+    @ContextConfiguration(classes = ConverterConfiguration.class)
+    static class ConvertedClassScoped {
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ConverterConfiguration {
+
+        @Bean
+        JwtGrantedAuthoritiesConverter authoritiesConverter() {
+            JwtGrantedAuthoritiesConverter converter = new JwtGrantedAuthoritiesConverter();
+            converter.setAuthorityPrefix("PERM_");
+            return converter;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenMatrix;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.Extension;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+
+@ContextConfiguration(classes = WithMockJwtTokenMatrixExtensionTest.ConverterConfiguration.class)
+class WithMockJwtTokenMatrixExtensionTest {
+
+    private static final Map<String, String> authorities = new ConcurrentHashMap<>();
+
+    @AfterAll
+    public static void everyIdentityRan() {
+        assertThat(authorities).containsOnly(
+                Map.entry("admin", "[ROLE_ADMIN]"),
+                Map.entry("pedro", "[ROLE_USER]"),
+                Map.entry("auditor", "[read]"));
+    }
+
+    @WithMockJwtTokenMatrix({
+            @WithMockJwtToken(subject = "admin", roles = "ADMIN"),
+            @WithMockJwtToken(subject = "pedro"),
+            @WithMockJwtToken(subject = "auditor", authorities = "read", signatureAlgorithm = "HS256")
+    })
+    @Execution(ExecutionMode.CONCURRENT)
+    public void runsOncePerIdentity(JwtAuthenticationToken authentication, Jwt jwt) {
+        assertThat(TestSecurityContextHolder.getContext().getAuthentication()).isSameAs(authentication);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isSameAs(authentication);
+        assertThat(authentication.getToken()).isSameAs(jwt);
+
+        assertThat(authorities.put(jwt.getSubject(), authentication.getAuthorities().toString())).isNull();
+    }
+
+    @WithMockJwtTokenMatrix({
+            @WithMockJwtToken(subject = "pedro", scope = "read", roles = "ADMIN", convertAuthorities = true),
+            @WithMockJwtToken(subject = "admin", roles = "ADMIN")
+    })
+    public void convertsAuthoritiesWithTheConverterBeanOfTheTest(JwtAuthenticationToken authentication) {
+        assertThat(authentication.getAuthorities()).extracting("authority")
+                .containsExactly(authentication.getName().equals("pedro") ? "PERM_read" : "ROLE_ADMIN");
+    }
+
+    @Test
+    public void concurrentIdentitiesWithDifferentStrategiesAreRejected() throws Exception {
+        ExtensionContext context = mock(ExtensionContext.class);
+        given(context.getRequiredTestMethod()).willReturn(MixedStrategies.class.getDeclaredMethod("test"));
+        given(context.getExecutionMode()).willReturn(ExecutionMode.CONCURRENT);
+        given(context.getConfigurationParameter("junit.jupiter.execution.parallel.enabled")).willReturn(Optional.of("true"));
+
+        assertThatIllegalStateException()
+                .isThrownBy(() -> new WithMockJwtTokenMatrixExtension().provideTestTemplateInvocationContexts(context))
+                .withMessageContaining("requires the ThreadScopedSecurityContextHolderStrategy");
+    }
+
+    @Test
+    public void identitiesAreSignedAgainAfterARotation() throws Exception {
+        ExtensionContext context = mock(ExtensionContext.class);
+        given(context.getRequiredTestMethod()).willReturn(Signed.class.getDeclaredMethod("test"));
+        willReturn(Signed.class).given(context).getRequiredTestClass();
+        given(context.getExecutionMode()).willReturn(ExecutionMode.SAME_THREAD);
+        TestTemplateInvocationContext invocation = new WithMockJwtTokenMatrixExtension()
+                .provideTestTemplateInvocationContexts(context).findFirst().orElseThrow();
+        Extension identity = invocation.getAdditionalExtensions().get(0);
+
+        try {
+            ((BeforeEachCallback) identity).beforeEach(context);
+            JwtAuthenticationToken before = WithMockJwtTokenSecurityContextFactory.getCurrentAuthentication();
+            MockJwtTokenKeys.rotate();
+            MockJwtTokenKeys.rotate();
+            ((BeforeEachCallback) identity).beforeEach(context);
+            JwtAuthenticationToken after = WithMockJwtTokenSecurityContextFactory.getCurrentAuthentication();
+
+            assertThat(after.getToken().getTokenValue()).isNotEqualTo(before.getToken().getTokenValue());
+            assertThat(MockJwtTokenKeys.jwtDecoder().decode(after.getToken().getTokenValue()).getSubject())
+                    .isEqualTo("pedro");
+        } finally {
+            ((AfterEachCallback) identity).afterEach(context);
+        }
+    }
+
+    private static class Signed {
+
+        @WithMockJwtTokenMatrix(@WithMockJwtToken(subject = "pedro", signatureAlgorithm = "HS256"))
+        void test() {
+        }
+    }
+
+    private static class MixedStrategies {
+
+        @WithMockJwtTokenMatrix({
+                @WithMockJwtToken(subject = "admin"),
+                @WithMockJwtToken(subject = "pedro", securityStrategyName = SecurityContextHolder.MODE_INHERITABLETHREADLOCAL)
+        })
+        void test() {
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ConverterConfiguration {
+
+        @Bean
+        JwtGrantedAuthoritiesConverter authoritiesConverter() {
+            JwtGrantedAuthoritiesConverter converter = new JwtGrantedAuthoritiesConverter();
+            converter.setAuthorityPrefix("PERM_");
+            return converter;
+        }
+    }
+}
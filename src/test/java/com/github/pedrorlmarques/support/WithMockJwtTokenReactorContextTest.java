@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.test.context.TestSecurityContextHolder;
+import org.springframework.security.test.context.support.ReactorContextTestExecutionListener;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestContextManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WithMockJwtTokenReactorContextTest {
+
+    private final WithMockJwtTokenSecurityContextFactory factory = new WithMockJwtTokenSecurityContextFactory();
+
+    @AfterEach
+    public void tearDown() {
+        TestSecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void contextIsBuiltOncePerIdentity() {
+        Authentication authentication = authentication("pedro");
+
+        assertThat(WithMockJwtTokenReactorContext.of(authentication)).isSameAs(WithMockJwtTokenReactorContext.of(authentication));
+        assertThat(subject().contextWrite(WithMockJwtTokenReactorContext.of(authentication)).block()).isEqualTo("pedro");
+    }
+
+    @Test
+    public void parallelPipelinesSeeTheirOwnIdentity() {
+        List<Authentication> authentications = IntStream.range(0, 500)
+                .mapToObj(i -> authentication("user-" + i))
+                .collect(Collectors.toList());
+
+        List<String> subjects = Flux.fromIterable(authentications)
+                .flatMapSequential(authentication -> subject()
+                        .delayElement(Duration.ofMillis(1))
+                        .subscribeOn(Schedulers.parallel())
+                        .contextWrite(WithMockJwtTokenReactorContext.of(authentication)), 256)
+                .collectList()
+                .block();
+
+        assertThat(subjects).isEqualTo(authentications.stream().map(Authentication::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void listenerExposesTheTestIdentity() {
+        TestContext testContext = new TestContextManager(WithMockJwtTokenReactorContextTest.class).getTestContext();
+        WithMockJwtTokenReactorContextTestExecutionListener listener = new WithMockJwtTokenReactorContextTestExecutionListener();
+        TestSecurityContextHolder.setContext(securityContext("pedro"));
+
+        listener.beforeTestMethod(testContext);
+        try {
+            assertThat(subject().subscribeOn(Schedulers.boundedElastic()).block()).isEqualTo("pedro");
+            assertThat(subject().contextWrite(WithMockJwtTokenReactorContext.of(authentication("admin"))).block())
+                    .isEqualTo("admin");
+        } finally {
+            listener.afterTestMethod(testContext);
+        }
+
+        assertThat(subject().block()).isNull();
+    }
+
+    @Test
+    public void listenerReplacesTheSpringSecurityHook() {
+        TestContext testContext = new TestContextManager(WithMockJwtTokenReactorContextTest.class).getTestContext();
+        ReactorContextTestExecutionListener springSecurityListener = new ReactorContextTestExecutionListener();
+        WithMockJwtTokenReactorContextTestExecutionListener listener = new WithMockJwtTokenReactorContextTestExecutionListener();
+        SecurityContext securityContext = securityContext("pedro");
+        TestSecurityContextHolder.setContext(securityContext);
+
+        springSecurityListener.beforeTestMethod(testContext);
+        listener.beforeTestMethod(testContext);
+        try {
+            assertThat(Mono.deferContextual(Mono::just).block())
+                    .isSameAs(WithMockJwtTokenReactorContext.of(securityContext.getAuthentication()));
+            assertThat(subject().block()).isEqualTo("pedro");
+        } finally {
+            listener.afterTestMethod(testContext);
+            springSecurityListener.afterTestMethod(testContext);
+        }
+
+        assertThat(subject().block()).isNull();
+    }
+
+    @Test
+    public void concurrentTestsSeeTheirOwnIdentity() throws Exception {
+        WithMockJwtTokenReactorContextTestExecutionListener listener = new WithMockJwtTokenReactorContextTestExecutionListener();
+        CyclicBarrier started = new CyclicBarrier(2);
+        CountDownLatch firstFinished = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> runTest(listener, "pedro", () -> {
+                started.await();
+                return subject().subscribeOn(Schedulers.boundedElastic()).block();
+            }, firstFinished::countDown));
+            Future<String> second = executor.submit(() -> runTest(listener, "admin", () -> {
+                started.await();
+                firstFinished.await();
+                return subject().subscribeOn(Schedulers.boundedElastic()).block();
+            }, () -> {
+            }));
+
+            assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("pedro");
+            assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("admin");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(subject().block()).isNull();
+    }
+
+    private String runTest(WithMockJwtTokenReactorContextTestExecutionListener listener, String subject,
+                           Callable<String> test, Runnable finished) throws Exception {
+        TestContext testContext = new TestContextManager(WithMockJwtTokenReactorContextTest.class).getTestContext();
+        TestSecurityContextHolder.setContext(securityContext(subject));
+        listener.beforeTestMethod(testContext);
+        try {
+            return test.call();
+        } finally {
+            listener.afterTestMethod(testContext);
+            TestSecurityContextHolder.clearContext();
+            finished.run();
+        }
+    }
+
+    private static Mono<String> subject() {
+        return ReactiveSecurityContextHolder.getContext().map(context -> context.getAuthentication().getName());
+    }
+
+    private Authentication authentication(String subject) {
+        return securityContext(subject).getAuthentication();
+    }
+
+    private SecurityContext securityContext(String subject) {
+        return this.factory.createSecurityContext(MergedAnnotation.of(WithMockJwtToken.class, Map.of("subject", subject)).synthesize());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pedrorlmarques.support;
+
+import com.github.pedrorlmarques.annotation.WithMockJwtTokenClaim;
+import com.github.pedrorlmarques.annotation.WithMockOpaqueToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class WithMockOpaqueTokenSecurityContextFactoryTest {
+
+    private final WithMockOpaqueTokenSecurityContextFactory factory = new WithMockOpaqueTokenSecurityContextFactory();
+
+    @Test
+    public void authenticationCarriesTheIntrospectedAttributes() {
+        BearerTokenAuthentication authentication = authentication(Pedro.class);
+
+        assertThat(authentication.getName()).isEqualTo("pedro");
+        assertThat(authentication.getAuthorities()).extracting("authority").containsExactly("ROLE_ADMIN");
+        assertThat(authentication.getTokenAttributes())
+                .containsEntry("active", true)
+                .containsEntry("sub", "pedro")
+                .containsEntry("scope", List.of("read", "write"))
+                .containsEntry("exp", Instant.parse("2100-01-01T00:00:00Z"))
+                .containsEntry("tenant", "dev");
+        assertThat(authentication.getToken().getTokenValue()).isNotEmpty();
+        assertThat(authentication.getToken().getScopes()).containsOnly("read", "write");
+        assertThat(authentication.getToken().getExpiresAt()).isEqualTo(Instant.parse("2100-01-01T00:00:00Z"));
+        assertThat(((OAuth2AuthenticatedPrincipal) authentication.getPrincipal())
+                .getAuthorities()).contains(new SimpleGrantedAuthority("ROLE_ADMIN"));
+    }
+
+    @Test
+    public void sameIdentityReusesAuthenticationAndToken() {
+        BearerTokenAuthentication first = authentication(Pedro.class);
+        BearerTokenAuthentication second = authentication(AnotherPedro.class);
+
+        assertThat(second).isSameAs(first);
+        assertThat(MockOpaqueTokenRegistry.find(first.getToken().getTokenValue())).isSameAs(first);
+    }
+
+    @Test
+    public void tokenValueCanBeSet() {
+        assertThat(authentication(FixedToken.class).getToken().getTokenValue()).isEqualTo("opaque-maria");
+    }
+
+    @Test
+    public void subjectIsRequired() {
+        assertThatIllegalArgumentException().isThrownBy(() -> authentication(NoSubject.class))
+                .withMessage("subject must be set unless a fixture is used");
+    }
+
+    private BearerTokenAuthentication authentication(Class<?> annotated) {
+        return (BearerTokenAuthentication) this.factory.createSecurityContext(
+                annotated.getAnnotation(WithMockOpaqueToken.class)).getAuthentication();
+    }
+
+    @WithMockOpaqueToken(subject = "pedro", roles = "ADMIN", scope = {"read", "write"},
+            expiresAt = "2100-01-01T00:00:00Z", additionalClaims = @WithMockJwtTokenClaim(name = "tenant", value = "dev"))
+    static class Pedro {
+    }
+
+    @WithMockOpaqueToken(subject = "pedro", roles = "ADMIN", scope = {"read", "write"},
+            expiresAt = "2100-01-01T00:00:00Z", additionalClaims = @WithMockJwtTokenClaim(name = "tenant", value = "dev"))
+    static class AnotherPedro {
+    }
+
+    @WithMockOpaqueToken(subject = "maria", token = "opaque-maria")
+    static class FixedToken {
+    }
+
+    @WithMockOpaqueToken
+    static class NoSubject {
+    }
+}